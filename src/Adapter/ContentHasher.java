@@ -0,0 +1,91 @@
+package Adapter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.IntStream;
+
+/**
+ * Calcul de l'empreinte SHA-256 du contenu d'un fichier.
+ * Le fichier est découpé en segments de taille fixe, lus par projection en
+ * mémoire et hachés en parallèle ; l'empreinte du fichier est celle de la
+ * suite des empreintes de ses segments. Elle ne dépend donc que du contenu,
+ * quel que soit le nombre de segments hachés simultanément.
+ */
+class ContentHasher {
+    // ATTRIBUTS
+
+    /**
+     * Taille d'un segment : 64 Mio
+     */
+    static final int CHUNK_SIZE = 64 << 20;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    // CONSTRUCTEUR
+
+    private ContentHasher() {
+    }
+
+    // REQUÊTE
+
+    /**
+     * Calcule l'empreinte du contenu d'un fichier
+     * @param file chemin du fichier
+     * @return empreinte en hexadécimal
+     * @throws IOException exception levée en cas d'erreur de lecture
+     */
+    static String hash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            byte[][] digests = new byte[chunks][];
+            IntStream range = IntStream.range(0, chunks);
+            if (chunks > 1) {
+                range = range.parallel();
+            }
+            try {
+                range.forEach(chunk -> digests[chunk] = hashChunk(channel, size, chunk));
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+            MessageDigest digest = sha256();
+            for (byte[] chunkDigest : digests) {
+                digest.update(chunkDigest);
+            }
+            return HEX.formatHex(digest.digest());
+        }
+    }
+
+    // OUTILS
+
+    /**
+     * Calcule l'empreinte d'un segment du fichier, projeté en mémoire
+     */
+    private static byte[] hashChunk(FileChannel channel, long size, int chunk) {
+        long position = (long) chunk * CHUNK_SIZE;
+        MessageDigest digest = sha256();
+        try {
+            if (size > 0) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(CHUNK_SIZE, size - position)));
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package Adapter;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * Interface représentant les opérations courantes sur un système de fichier.
@@ -28,6 +30,24 @@ public interface FileSystem {
      */
     List<Path> listFiles(Path directory);
 
+    /**
+     * Parcourt les entrées d'un répertoire donné en fournissant pour chacune
+     * ses attributs (type, taille, date de modification, clé du fichier), lus
+     * en une seule passe sur le répertoire. Les entrées sont transmises au fur
+     * et à mesure de la lecture, sans constituer de liste intermédiaire.
+     * @param directory chemin du répertoire
+     * @param consumer action appliquée à chaque entrée avec ses attributs
+     */
+    void listFilesWithAttributes(
+            Path directory, BiConsumer<Path, BasicFileAttributes> consumer);
+
+    /**
+     * Récupère les attributs d'un fichier ou d'un répertoire.
+     * @param path chemin du fichier ou répertoire
+     * @return attributs du fichier, {@code null} s'il n'existe pas
+     */
+    BasicFileAttributes getAttributes(Path path);
+
     /**
      * Récupère la date de la dernière modification d'un fichier.
      * @param file chemin du fichier
@@ -36,14 +56,74 @@ public interface FileSystem {
      */
     Date getFileLastModified(Path file);
 
+    /**
+     * Calcule l'empreinte du contenu d'un fichier.
+     * @param file chemin du fichier
+     * @return empreinte du contenu en hexadécimal, {@code null} si le
+     * fichier ne peut être lu
+     */
+    String getContentHash(Path file);
+
     // COMMANDES
 
     /**
-     * Copie un fichier d'un dossier source vers une destination.
+     * Copie un fichier d'un dossier source vers une destination, en
+     * conservant sa date de modification.
      * @param source chemin du fichier source à copier
      * @param destination chemin de destination où le fichier sera placé
+     * @param published action appelée une fois la copie visible à sa
+     * destination, éventuellement après le retour de la méthode selon le
+     * niveau de durabilité, et jamais si la copie échoue
+     * @return nombre d'octets copiés, {@code -1} en cas d'erreur
+     */
+    long copyFile(Path source, Path destination, Runnable published);
+
+    /**
+     * Copie un fichier d'un dossier source vers une destination à partir de
+     * sa taille et de sa date de modification déjà lues, sans relire les
+     * attributs du fichier source.
+     * @param source chemin du fichier source à copier
+     * @param destination chemin de destination où le fichier sera placé
+     * @param size taille du fichier source, {@code -1} si inconnue
+     * @param lastModified date de modification du fichier source, appliquée
+     * à la copie
+     * @param published action appelée une fois la copie visible à sa
+     * destination, éventuellement après le retour de la méthode selon le
+     * niveau de durabilité, et jamais si la copie échoue
+     * @return nombre d'octets copiés, {@code -1} en cas d'erreur
+     */
+    long copyFile(Path source, Path destination, long size, Date lastModified,
+            Runnable published);
+
+    /**
+     * Publie les copies encore en attente : elles deviennent visibles à leur
+     * destination et sont écrites sur le support selon le niveau de
+     * durabilité du système de fichiers.
+     */
+    void commit();
+
+    /**
+     * Déplace ou renomme un fichier sans copier son contenu, les deux
+     * chemins étant sur le même système de fichiers. Un fichier existant au
+     * nouveau chemin est remplacé atomiquement si le système de fichiers le
+     * permet.
+     * @param source chemin du fichier à déplacer
+     * @param destination nouveau chemin du fichier
+     * @return {@code true} si le fichier a été déplacé, {@code false} en cas
+     * d'erreur
+     */
+    boolean moveFile(Path source, Path destination);
+
+    /**
+     * Crée un lien physique vers un fichier existant : les deux chemins
+     * désignent alors le même contenu, sans copie. Le lien ne doit pas
+     * exister.
+     * @param existing chemin du fichier existant
+     * @param link chemin du lien à créer
+     * @return {@code true} si le lien a été créé, {@code false} en cas
+     * d'erreur ou si le système de fichiers ne le permet pas
      */
-    void copyFile(Path source, Path destination);
+    boolean linkFile(Path existing, Path link);
 
     /**
      * Supprime un fichier donné.
@@ -1,29 +1,73 @@
 package Adapter;
 
+import Strategy.ChannelCopyStrategy;
+import Strategy.ChunkedCopyStrategy;
+import Strategy.CopyStrategy;
+import Strategy.Durability;
+import Strategy.WriteCommitter;
+
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.function.BiConsumer;
 
 /**
  * Implémentation concrète de l'interface {@link FileSystem} en utilisant l'API
  * Java {@code java.nio.file} pour un système de fichiers local
+ * La copie du contenu des fichiers est déléguée à une {@link CopyStrategy},
+ * par défaut une copie dans le noyau sans passer par le tas Java, parallèle
+ * par segments pour les fichiers volumineux. Chaque copie est écrite dans
+ * un fichier temporaire puis publiée par un renommage atomique, selon un
+ * niveau de durabilité configurable.
+ *
+ * @see WriteCommitter publication des copies
  */
 public class LocalFileSystemAdapter implements FileSystem {
+    // ATTRIBUTS
+
+    private CopyStrategy copyStrategy;
+    private WriteCommitter committer;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur utilisant la copie dans le noyau, par segments au-delà de
+     * {@link ChunkedCopyStrategy#DEFAULT_THRESHOLD}
+     * @see ChannelCopyStrategy copie dans le noyau
+     * @see ChunkedCopyStrategy copie parallèle par segments
+     */
+    public LocalFileSystemAdapter() {
+        this(new ChunkedCopyStrategy(new ChannelCopyStrategy()));
+    }
+
+    /**
+     * Constructeur
+     * @param copyStrategy stratégie de copie du contenu des fichiers
+     */
+    public LocalFileSystemAdapter(CopyStrategy copyStrategy) {
+        this.copyStrategy = copyStrategy;
+        this.committer = new WriteCommitter(Durability.NONE);
+    }
+
     // REQUÊTES
 
     @Override
     public List<Path> listFiles(Path directory) {
         List<Path> files = new ArrayList<>();
-        try {
-            Stream<Path> stream = Files.list(directory);
-            for (Path path : stream.toList()) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
                 files.add(path);
             }
         } catch (IOException exception) {
@@ -33,6 +77,47 @@ public class LocalFileSystemAdapter implements FileSystem {
         return files;
     }
 
+    @Override
+    public void listFilesWithAttributes(
+            Path directory, BiConsumer<Path, BasicFileAttributes> consumer) {
+        try {
+            // profondeur 1 : chaque entrée, répertoire compris, est transmise
+            // à visitFile avec les attributs lus pendant le parcours
+            Files.walkFileTree(directory,
+                    EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+                    new SimpleFileVisitor<>() {
+                        @Override
+                        public FileVisitResult visitFile(
+                                Path file, BasicFileAttributes attributes) {
+                            if (!file.equals(directory)) {
+                                consumer.accept(file, attributes);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(
+                                Path file, IOException exception) {
+                            System.out.println("error with the attributes of file "
+                                    + exception.getMessage());
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException exception) {
+            System.out.println("error with the lists of files "
+                    + exception.getMessage());
+        }
+    }
+
+    @Override
+    public BasicFileAttributes getAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
     @Override
     public Date getFileLastModified(Path file) {
         try {
@@ -46,18 +131,104 @@ public class LocalFileSystemAdapter implements FileSystem {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Les fichiers volumineux sont hachés par segments parallèles projetés en
+     * mémoire.
+     * @see ContentHasher calcul de l'empreinte
+     */
+    @Override
+    public String getContentHash(Path file) {
+        try {
+            return ContentHasher.hash(file);
+        } catch (IOException exception) {
+            System.out.println("error with the hash of file "
+                    + exception.getMessage());
+            return null;
+        }
+    }
+
     // COMMANDES
 
+    /**
+     * Défini la stratégie de copie du contenu des fichiers
+     * @param copyStrategy stratégie de copie
+     */
+    public void setCopyStrategy(CopyStrategy copyStrategy) {
+        this.copyStrategy = copyStrategy;
+    }
+
+    /**
+     * Défini le niveau de durabilité des copies, après la publication des
+     * copies en attente
+     * @param durability niveau de durabilité
+     */
+    public void setDurability(Durability durability) {
+        committer.flush();
+        this.committer = new WriteCommitter(durability);
+    }
+
     @Override
-    public void copyFile(Path source, Path destination) {
+    public long copyFile(Path source, Path destination, Runnable published) {
+        BasicFileAttributes attributes = getAttributes(source);
+        if (attributes == null) {
+            System.out.println("error with the copy of file " + source);
+            return -1;
+        }
+        return copyFile(source, destination, attributes.size(),
+                new Date(attributes.lastModifiedTime().toMillis()), published);
+    }
+
+    @Override
+    public long copyFile(Path source, Path destination, long size,
+            Date lastModified, Runnable published) {
+        FileTime modified = FileTime.fromMillis(lastModified.getTime());
+        WriteCommitter copyCommitter = committer.notifying(published);
         try {
-            Files.createDirectories(destination.getParent());
-            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-            FileTime fileTime = Files.getLastModifiedTime(source);
-            Files.setLastModifiedTime(destination, fileTime);
+            try {
+                return copyStrategy.copy(source, destination, size, modified,
+                        copyCommitter);
+            } catch (NoSuchFileException exception) {
+                if (!source.toString().equals(exception.getFile())) {
+                    // répertoire parent absent : créé puis nouvelle tentative
+                    Files.createDirectories(destination.getParent());
+                }
+                return copyStrategy.copy(source, destination, size, modified,
+                        copyCommitter);
+            }
         } catch (IOException exception) {
             System.out.println("error with the copy of file "
                     + exception.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public void commit() {
+        committer.flush();
+    }
+
+    @Override
+    public boolean moveFile(Path source, Path destination) {
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | UnsupportedOperationException exception) {
+            System.out.println("error with the move of file "
+                    + exception.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean linkFile(Path existing, Path link) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException exception) {
+            System.out.println("error with the link of file "
+                    + exception.getMessage());
+            return false;
         }
     }
 
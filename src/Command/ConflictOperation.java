@@ -0,0 +1,130 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Scanner;
+
+/**
+ * Résolution d'un conflit entre deux fichiers modifiés des deux côtés depuis
+ * leur dernière synchronisation : l'utilisateur choisit de garder le fichier
+ * source, celui du dossier cible, ou d'ignorer le conflit
+ */
+public class ConflictOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Scanner scanner;
+    private final Path source;
+    private final Path destination;
+    private final long size;
+    private final String relative;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param scanner lecture des choix de l'utilisateur
+     * @param source chemin du fichier source
+     * @param destination chemin du fichier cible
+     * @param size taille du plus grand des deux fichiers, {@code -1} si
+     * inconnue
+     * @param relative chemin relatif utilisé dans le registre
+     */
+    public ConflictOperation(FileSystem fileSystem, Registry registry,
+            Scanner scanner, Path source, Path destination, long size,
+            String relative) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.scanner = scanner;
+        this.source = source;
+        this.destination = destination;
+        this.size = size;
+        this.relative = relative;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.CONFLICT;
+    }
+
+    @Override
+    public Path getTarget() {
+        return destination;
+    }
+
+    @Override
+    public long getSize() {
+        return Math.max(size, 0);
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        System.out.println("detected conflict: " + relative);
+
+        Date sourceLastModified = fileSystem.getFileLastModified(source);
+        Date destinationLastModified = fileSystem.getFileLastModified(destination);
+
+        if (sourceLastModified == null || destinationLastModified == null) {
+            System.out.println("Unable to resolve conflict due to missing file dates.");
+            return;
+        }
+
+        System.out.println(
+                "source: " + source
+                        + " last modified:"
+                        + sourceLastModified);
+        System.out.println(
+                "destination: " + destination
+                        + " last modified:"
+                        + destinationLastModified);
+
+        int choice = -1;
+        while (choice < 1 || choice > 3) {
+            System.out.println("possible actions: ");
+            System.out.println("1 - use the source file");
+            System.out.println("2 - use the destination file");
+            System.out.println("3 - ignore");
+            System.out.print("choice (1-3): ");
+            try {
+                choice = Integer.parseInt(scanner.nextLine().trim());
+            } catch (NumberFormatException e) {
+                System.out.println("the choice must be between 1 and 3");
+            }
+        }
+        Date now = new Date();
+        switch (choice) {
+            case 1:
+                System.out.println("copy from: " + source + " to " + destination);
+                fileSystem.copyFile(source, destination, () -> resolved(now));
+                break;
+            case 2:
+                System.out.println("copy from: " + destination + " to " + source);
+                fileSystem.copyFile(destination, source, () -> resolved(now));
+                break;
+            case 3:
+                System.out.println("ignore");
+                break;
+        }
+    }
+
+    // OUTIL
+
+    /**
+     * Enregistre la résolution du conflit, une fois la copie choisie publiée
+     * @param date date de la résolution
+     */
+    private void resolved(Date date) {
+        registry.updateDate(relative, date);
+        registry.removeContentHash(relative);
+    }
+}
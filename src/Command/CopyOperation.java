@@ -0,0 +1,110 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * Copie d'un fichier d'un côté à l'autre de la synchronisation, suivie de la
+ * mise à jour de sa date de synchronisation dans le registre et, si elle est
+ * connue, de l'empreinte de son contenu
+ */
+public class CopyOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path from;
+    private final Path to;
+    private final long size;
+    private final String relative;
+    private final Date syncDate;
+    private final String hash;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param from chemin du fichier copié
+     * @param to chemin de la copie
+     * @param size taille du fichier en octets, {@code -1} si inconnue
+     * @param relative chemin relatif utilisé dans le registre
+     * @param syncDate date de modification du fichier copié, appliquée à la
+     * copie et enregistrée comme date de synchronisation
+     */
+    public CopyOperation(FileSystem fileSystem, Registry registry, Path from,
+            Path to, long size, String relative, Date syncDate) {
+        this(fileSystem, registry, from, to, size, relative, syncDate, null);
+    }
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param from chemin du fichier copié
+     * @param to chemin de la copie
+     * @param size taille du fichier en octets, {@code -1} si inconnue
+     * @param relative chemin relatif utilisé dans le registre
+     * @param syncDate date de modification du fichier copié, appliquée à la
+     * copie et enregistrée comme date de synchronisation
+     * @param hash empreinte du contenu du fichier copié, {@code null} si
+     * inconnue
+     */
+    public CopyOperation(FileSystem fileSystem, Registry registry, Path from,
+            Path to, long size, String relative, Date syncDate, String hash) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.from = from;
+        this.to = to;
+        this.size = size;
+        this.relative = relative;
+        this.syncDate = syncDate;
+        this.hash = hash;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.TRANSFER;
+    }
+
+    @Override
+    public Path getTarget() {
+        return to;
+    }
+
+    @Override
+    public long getSize() {
+        return Math.max(size, 0);
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        System.out.println("copy of: " + from + " to " + to);
+        fileSystem.copyFile(from, to, size, syncDate, this::record);
+    }
+
+    // OUTIL
+
+    /**
+     * Enregistre la synchronisation du fichier, une fois sa copie publiée à
+     * sa destination
+     */
+    private void record() {
+        registry.updateDate(relative, syncDate);
+        if (hash != null && size >= 0) {
+            registry.updateContentHash(relative, new ContentHash(size,
+                    syncDate.getTime(), syncDate.getTime(), hash));
+        } else {
+            registry.removeContentHash(relative);
+        }
+    }
+}
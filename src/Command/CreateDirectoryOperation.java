@@ -0,0 +1,47 @@
+package Command;
+
+import Adapter.FileSystem;
+
+import java.nio.file.Path;
+
+/**
+ * Création d'un répertoire manquant d'un côté de la synchronisation
+ */
+public class CreateDirectoryOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Path directory;
+
+    // CONSTRUCTEUR
+
+    public CreateDirectoryOperation(FileSystem fileSystem, Path directory) {
+        this.fileSystem = fileSystem;
+        this.directory = directory;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.DIRECTORY;
+    }
+
+    @Override
+    public Path getTarget() {
+        return directory;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        fileSystem.createDirectory(directory);
+        System.out.println("created directory " + directory);
+    }
+}
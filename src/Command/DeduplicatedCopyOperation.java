@@ -0,0 +1,146 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.ContentHash;
+import Singleton.Registry;
+import Strategy.WriteCommitter;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+
+/**
+ * Copie d'un fichier vers la destination avec déduplication : l'empreinte
+ * du fichier est calculée et, si un fichier de même contenu existe déjà en
+ * destination d'après l'index des empreintes du registre, un lien physique
+ * vers ce fichier remplace la copie. Le fichier existant n'est retenu que si
+ * sa taille et sa date sont encore celles de son empreinte enregistrée.
+ * Un lien partage la date de modification du fichier existant : la date de
+ * synchronisation enregistrée est la plus récente des deux dates, comme pour
+ * un fichier de même contenu des deux côtés, afin qu'aucun côté ne paraisse
+ * modifié. Le lien remplace atomiquement un fichier existant au même chemin.
+ * Sans fichier identique, ou si le lien échoue, par exemple entre deux
+ * systèmes de fichiers, le fichier est copié et son empreinte enregistrée,
+ * pour être retrouvé par les copies suivantes.
+ *
+ * @see CopyOperation copie de repli
+ * @see Registry#getPathsByHash(String) index des empreintes
+ */
+public class DeduplicatedCopyOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path from;
+    private final Path to;
+    private final Path destinationRoot;
+    private final long size;
+    private final String relative;
+    private final Date syncDate;
+    private final String hash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param from chemin du fichier source
+     * @param to chemin de la copie en destination
+     * @param destinationRoot répertoire destination, racine des chemins
+     * relatifs du registre
+     * @param size taille du fichier en octets, {@code -1} si inconnue
+     * @param relative chemin relatif utilisé dans le registre
+     * @param syncDate date de modification du fichier source
+     * @param hash empreinte du contenu du fichier source, {@code null} si
+     * elle reste à calculer
+     */
+    public DeduplicatedCopyOperation(FileSystem fileSystem, Registry registry,
+            Path from, Path to, Path destinationRoot, long size, String relative,
+            Date syncDate, String hash) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.from = from;
+        this.to = to;
+        this.destinationRoot = destinationRoot;
+        this.size = size;
+        this.relative = relative;
+        this.syncDate = syncDate;
+        this.hash = hash;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.TRANSFER;
+    }
+
+    @Override
+    public Path getTarget() {
+        return to;
+    }
+
+    @Override
+    public long getSize() {
+        return Math.max(size, 0);
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        String contentHash = hash != null ? hash : fileSystem.getContentHash(from);
+        if (contentHash != null) {
+            for (String candidate : registry.getPathsByHash(contentHash)) {
+                if (!candidate.equals(relative) && link(candidate, contentHash)) {
+                    return;
+                }
+            }
+        }
+        new CopyOperation(fileSystem, registry, from, to, size, relative,
+                syncDate, contentHash).execute();
+    }
+
+    // OUTILS
+
+    /**
+     * Remplace la copie par un lien vers un fichier de destination de même
+     * empreinte, s'il est inchangé depuis son enregistrement
+     * @param candidate chemin relatif du fichier de même empreinte
+     * @param contentHash empreinte du contenu
+     * @return {@code true} si le lien a été créé et enregistré
+     */
+    private boolean link(String candidate, String contentHash) {
+        ContentHash recorded = registry.getContentHash(candidate);
+        Path existing = destinationRoot.resolve(candidate);
+        BasicFileAttributes attributes = fileSystem.getAttributes(existing);
+        if (recorded == null || attributes == null || !attributes.isRegularFile()
+                || !recorded.matchesDestination(attributes.size(),
+                        attributes.lastModifiedTime().toMillis())) {
+            return false;
+        }
+        if (fileSystem.exists(to)) {
+            // lien temporaire voisin puis remplacement atomique
+            Path temporary = to.resolveSibling(
+                    "." + to.getFileName() + ".link" + WriteCommitter.TEMPORARY_SUFFIX);
+            if (!fileSystem.linkFile(existing, temporary)) {
+                return false;
+            }
+            if (!fileSystem.moveFile(temporary, to)) {
+                fileSystem.deleteFile(temporary);
+                return false;
+            }
+        } else if (!fileSystem.linkFile(existing, to)) {
+            return false;
+        }
+        System.out.println("link of: " + to + " to " + existing);
+        long sourceModified = syncDate.getTime();
+        long destinationModified = attributes.lastModifiedTime().toMillis();
+        registry.updateDate(relative,
+                new Date(Math.max(sourceModified, destinationModified)));
+        registry.updateContentHash(relative, new ContentHash(attributes.size(),
+                sourceModified, destinationModified, contentHash));
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.DirectoryState;
+import Singleton.Registry;
+import Visitor.DirectoryDigest;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Enregistrement dans le registre de l'état d'un répertoire et de son
+ * équivalent en destination une fois leur synchronisation terminée, afin de
+ * pouvoir ignorer le répertoire tant qu'il reste inchangé des deux côtés.
+ * Les dates sont lues après l'exécution des transferts, qui modifient les
+ * répertoires dans lesquels ils créent des fichiers.
+ * L'empreinte de Merkle de chaque côté est calculée à partir des états déjà
+ * enregistrés des sous-répertoires, l'opération doit donc être exécutée
+ * après celles de ses sous-répertoires ; elle n'est enregistrée que si les
+ * deux côtés sont identiques. Pour un répertoire élagué, dont seul un
+ * descendant a été synchronisé, le nombre d'entrées et l'empreinte des
+ * entrées directes enregistrés sont conservés et seule l'empreinte de
+ * l'arborescence est mise à jour.
+ *
+ * @see DirectoryDigest empreinte d'une arborescence
+ * @see DirectoryState état d'un répertoire
+ */
+public class DirectoryStateOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path source;
+    private final Path destination;
+    private final String relative;
+    private final int children;
+    private final boolean pruned;
+    private final DirectoryDigest directoryDigest;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param source répertoire source
+     * @param destination répertoire cible
+     * @param relative chemin relatif utilisé dans le registre
+     * @param children nombre d'entrées des deux répertoires une fois
+     * synchronisés
+     */
+    public DirectoryStateOperation(FileSystem fileSystem, Registry registry,
+            Path source, Path destination, String relative, int children) {
+        this(fileSystem, registry, source, destination, relative, children, false);
+    }
+
+    /**
+     * Constructeur d'une opération sur un répertoire élagué, dont le contenu
+     * direct n'a pas été listé
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param source répertoire source
+     * @param destination répertoire cible
+     * @param relative chemin relatif utilisé dans le registre
+     */
+    public DirectoryStateOperation(FileSystem fileSystem, Registry registry,
+            Path source, Path destination, String relative) {
+        this(fileSystem, registry, source, destination, relative, -1, true);
+    }
+
+    private DirectoryStateOperation(FileSystem fileSystem, Registry registry,
+            Path source, Path destination, String relative, int children,
+            boolean pruned) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.source = source;
+        this.destination = destination;
+        this.relative = relative;
+        this.children = children;
+        this.pruned = pruned;
+        this.directoryDigest = new DirectoryDigest(fileSystem, registry);
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.STATE;
+    }
+
+    @Override
+    public Path getTarget() {
+        return source;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        BasicFileAttributes sourceAttributes = fileSystem.getAttributes(source);
+        BasicFileAttributes destinationAttributes = fileSystem.getAttributes(destination);
+        if (sourceAttributes == null || destinationAttributes == null) {
+            return;
+        }
+        DirectoryState recorded = registry.getDirectoryState(relative);
+        if (pruned && recorded == null) {
+            return;
+        }
+        Path relativePath = Path.of(relative);
+        DirectoryDigest.Digest sourceDigest =
+                directoryDigest.update(source, relativePath, false, pruned);
+        DirectoryDigest.Digest destinationDigest =
+                directoryDigest.update(destination, relativePath, true, pruned);
+        if (sourceDigest == null || destinationDigest == null) {
+            return;
+        }
+        boolean sameEntries = sourceDigest.complete() && destinationDigest.complete()
+                && sourceDigest.entries().equals(destinationDigest.entries());
+        boolean sameTree = sourceDigest.tree().equals(destinationDigest.tree());
+        registry.updateDirectoryState(relative, new DirectoryState(
+                sourceAttributes.lastModifiedTime().toMillis(),
+                pruned ? recorded.getSourceChildren() : children,
+                destinationAttributes.lastModifiedTime().toMillis(),
+                pruned ? recorded.getDestinationChildren() : children,
+                sameEntries ? sourceDigest.entries() : null,
+                sameTree ? sourceDigest.tree() : null));
+    }
+}
@@ -0,0 +1,95 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * Création dans la destination d'un fichier copié dans la source, dont le
+ * contenu existe déjà en destination sous un autre chemin : un lien
+ * physique vers le fichier existant est créé au lieu d'une copie. Si le lien
+ * ne peut être créé, le fichier source est copié.
+ *
+ * @see CopyOperation copie de repli
+ */
+public class LinkOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path sourceFile;
+    private final Path existing;
+    private final Path to;
+    private final String relative;
+    private final long size;
+    private final Date syncDate;
+    private final String hash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param sourceFile fichier source
+     * @param existing fichier de destination de même contenu
+     * @param to chemin du fichier à créer en destination
+     * @param relative chemin relatif utilisé dans le registre
+     * @param size taille du fichier en octets
+     * @param syncDate date de modification du fichier, enregistrée comme date
+     * de synchronisation
+     * @param hash empreinte du contenu du fichier, {@code null} si inconnue
+     */
+    public LinkOperation(FileSystem fileSystem, Registry registry,
+            Path sourceFile, Path existing, Path to, String relative,
+            long size, Date syncDate, String hash) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.sourceFile = sourceFile;
+        this.existing = existing;
+        this.to = to;
+        this.relative = relative;
+        this.size = size;
+        this.syncDate = syncDate;
+        this.hash = hash;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.TRANSFER;
+    }
+
+    @Override
+    public Path getTarget() {
+        return to;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        System.out.println("link of: " + to + " to " + existing);
+        if (!fileSystem.linkFile(existing, to)) {
+            new CopyOperation(fileSystem, registry, sourceFile, to, size,
+                    relative, syncDate, hash).execute();
+            return;
+        }
+        registry.updateDate(relative, syncDate);
+        if (hash != null) {
+            registry.updateContentHash(relative, new ContentHash(size,
+                    syncDate.getTime(), syncDate.getTime(), hash));
+        } else {
+            registry.removeContentHash(relative);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * Déplacement dans la destination d'un fichier déplacé ou renommé dans la
+ * source : le fichier de destination correspondant à son ancien chemin est
+ * renommé au lieu d'être recopié, et l'ancien chemin est retiré du registre.
+ * Si le renommage échoue, le fichier source est copié.
+ *
+ * @see CopyOperation copie de repli
+ */
+public class MoveOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path sourceFile;
+    private final Path previous;
+    private final Path to;
+    private final String previousRelative;
+    private final String relative;
+    private final long size;
+    private final Date syncDate;
+    private final String hash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param sourceFile fichier source à son nouveau chemin
+     * @param previous fichier de destination à l'ancien chemin
+     * @param to nouveau chemin du fichier de destination
+     * @param previousRelative ancien chemin relatif utilisé dans le registre
+     * @param relative nouveau chemin relatif utilisé dans le registre
+     * @param size taille du fichier en octets
+     * @param syncDate date de modification du fichier, enregistrée comme date
+     * de synchronisation
+     * @param hash empreinte du contenu du fichier, {@code null} si inconnue
+     */
+    public MoveOperation(FileSystem fileSystem, Registry registry,
+            Path sourceFile, Path previous, Path to, String previousRelative,
+            String relative, long size, Date syncDate, String hash) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.sourceFile = sourceFile;
+        this.previous = previous;
+        this.to = to;
+        this.previousRelative = previousRelative;
+        this.relative = relative;
+        this.size = size;
+        this.syncDate = syncDate;
+        this.hash = hash;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.TRANSFER;
+    }
+
+    @Override
+    public Path getTarget() {
+        return to;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        System.out.println("move of: " + previous + " to " + to);
+        if (!fileSystem.moveFile(previous, to)) {
+            new CopyOperation(fileSystem, registry, sourceFile, to, size,
+                    relative, syncDate, hash).execute();
+            return;
+        }
+        ContentHash recorded = registry.getContentHash(previousRelative);
+        registry.removePath(previousRelative);
+        registry.updateDate(relative, syncDate);
+        if (hash != null) {
+            registry.updateContentHash(relative, new ContentHash(size,
+                    syncDate.getTime(), syncDate.getTime(), hash));
+        } else if (recorded != null
+                && recorded.matchesSource(size, syncDate.getTime())
+                && recorded.matchesDestination(size, syncDate.getTime())) {
+            registry.updateContentHash(relative, recorded);
+        } else {
+            registry.removeContentHash(relative);
+        }
+    }
+}
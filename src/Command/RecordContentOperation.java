@@ -0,0 +1,69 @@
+package Command;
+
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * Enregistrement dans le registre d'un fichier dont la date a changé d'un
+ * côté ou des deux mais dont le contenu est identique des deux côtés : sa
+ * date de synchronisation et son empreinte sont mises à jour sans copie.
+ *
+ * @see ContentHash empreinte du contenu
+ */
+public class RecordContentOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final Registry registry;
+    private final Path target;
+    private final String relative;
+    private final Date syncDate;
+    private final ContentHash contentHash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param registry registre de synchronisation
+     * @param target chemin du fichier source
+     * @param relative chemin relatif utilisé dans le registre
+     * @param syncDate date de synchronisation à enregistrer, postérieure ou
+     * égale aux dates de modification des deux fichiers
+     * @param contentHash empreinte du contenu des deux fichiers
+     */
+    public RecordContentOperation(Registry registry, Path target,
+            String relative, Date syncDate, ContentHash contentHash) {
+        this.registry = registry;
+        this.target = target;
+        this.relative = relative;
+        this.syncDate = syncDate;
+        this.contentHash = contentHash;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.STATE;
+    }
+
+    @Override
+    public Path getTarget() {
+        return target;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        registry.updateDate(relative, syncDate);
+        registry.updateContentHash(relative, contentHash);
+    }
+}
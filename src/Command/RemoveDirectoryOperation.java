@@ -0,0 +1,67 @@
+package Command;
+
+import Adapter.FileSystem;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+
+/**
+ * Suppression d'un répertoire de destination vidé par le déplacement de ses
+ * fichiers, afin qu'il ne soit pas recréé dans la source. Le répertoire
+ * n'est supprimé que s'il est vide ; ce qui reste enregistré sous lui dans le
+ * registre est alors oublié.
+ */
+public class RemoveDirectoryOperation implements SyncOperation {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+    private final Path directory;
+    private final String relative;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre de synchronisation
+     * @param directory chemin du répertoire de destination
+     * @param relative chemin relatif du répertoire dans le registre
+     */
+    public RemoveDirectoryOperation(FileSystem fileSystem, Registry registry,
+            Path directory, String relative) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+        this.directory = directory;
+        this.relative = relative;
+    }
+
+    // REQUÊTES
+
+    @Override
+    public Kind getKind() {
+        return Kind.CLEANUP;
+    }
+
+    @Override
+    public Path getTarget() {
+        return directory;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    // COMMANDE
+
+    @Override
+    public void execute() {
+        if (fileSystem.listFiles(directory).isEmpty()) {
+            fileSystem.deleteFile(directory);
+            if (!fileSystem.exists(directory)) {
+                registry.removePathsUnder(relative);
+            }
+        }
+    }
+}
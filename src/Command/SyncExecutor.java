@@ -0,0 +1,124 @@
+package Command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exécution d'un {@link SyncPlan}, par catégorie d'opérations : création des
+ * répertoires dans l'ordre du plan, résolution des conflits un par un, puis
+ * transferts de fichiers répartis sur un nombre borné de threads,
+ * publication des copies en attente, suppression des répertoires vidés par
+ * des déplacements et enfin enregistrement de l'état des répertoires. Un transfert lent n'empêche
+ * ainsi pas les autres de progresser.
+ * En mode threads virtuels, chaque transfert dispose de son propre thread
+ * virtuel : la concurrence n'est alors bornée que par le système de
+ * fichiers, par exemple par un
+ * {@link Decorator.ThrottledFileSystem}, et les attentes des périphériques
+ * lents se recouvrent au lieu de s'additionner.
+ *
+ * @see SyncOperation opération de synchronisation
+ */
+public class SyncExecutor {
+    // ATTRIBUTS
+
+    private final int workers;
+    private final boolean virtualThreads;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur
+     * @param workers nombre maximal de transferts simultanés
+     */
+    public SyncExecutor(int workers) {
+        this(workers, false);
+    }
+
+    /**
+     * Constructeur
+     * @param workers nombre maximal de transferts simultanés, ignoré en mode
+     * threads virtuels
+     * @param virtualThreads {@code true} pour exécuter chaque opération dans
+     * un thread virtuel
+     */
+    public SyncExecutor(int workers, boolean virtualThreads) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                    "workers must be positive: " + workers);
+        }
+        this.workers = workers;
+        this.virtualThreads = virtualThreads;
+    }
+
+    // COMMANDES
+
+    /**
+     * Exécute toutes les opérations du plan, en publiant les copies en
+     * attente après les transferts : l'état des répertoires est enregistré
+     * d'après les copies visibles
+     * @param plan plan de synchronisation
+     * @param commit publication des copies en attente
+     * @see Adapter.FileSystem#commit() publication des copies
+     */
+    public void execute(SyncPlan plan, Runnable commit) {
+        runSequentially(plan, SyncOperation.Kind.DIRECTORY);
+        runSequentially(plan, SyncOperation.Kind.CONFLICT);
+        runConcurrently(plan, SyncOperation.Kind.TRANSFER);
+        commit.run();
+        runSequentially(plan, SyncOperation.Kind.CLEANUP);
+        // l'état d'un répertoire dépend de celui de ses sous-répertoires,
+        // enregistrés avant lui dans le plan
+        runSequentially(plan, SyncOperation.Kind.STATE);
+    }
+
+    // OUTILS
+
+    /**
+     * Exécute dans l'ordre du plan les opérations d'une catégorie
+     * @param plan plan de synchronisation
+     * @param kind catégorie des opérations à exécuter
+     */
+    private void runSequentially(SyncPlan plan, SyncOperation.Kind kind) {
+        for (SyncOperation operation : plan.getOperations()) {
+            if (operation.getKind() == kind) {
+                operation.execute();
+            }
+        }
+    }
+
+    /**
+     * Exécute en parallèle les opérations d'une catégorie et attend leur fin
+     * @param plan plan de synchronisation
+     * @param kind catégorie des opérations à exécuter
+     */
+    private void runConcurrently(SyncPlan plan, SyncOperation.Kind kind) {
+        ExecutorService executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SyncOperation operation : plan.getOperations()) {
+                if (operation.getKind() == kind) {
+                    futures.add(executor.submit(operation::execute));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException exception) {
+                    System.out.println("error with the synchronization "
+                            + exception.getCause());
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
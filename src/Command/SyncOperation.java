@@ -0,0 +1,68 @@
+package Command;
+
+import java.nio.file.Path;
+
+/**
+ * Interface du patron Command représentant une opération de synchronisation
+ * décidée lors de la planification et exécutée ensuite par un
+ * {@link SyncExecutor}.
+ * Chaque opération appartient à une catégorie qui fixe son ordre
+ * d'exécution : les répertoires sont créés avant les fichiers qu'ils
+ * contiendront, les conflits sont résolus un par un avec l'utilisateur, les
+ * copies indépendantes sont exécutées en parallèle, les répertoires vidés
+ * par des déplacements sont ensuite supprimés et l'état des répertoires est
+ * enregistré une fois leur contenu synchronisé.
+ *
+ * @see SyncPlan plan de synchronisation
+ */
+public interface SyncOperation {
+    /**
+     * Catégories d'opérations, dans leur ordre d'exécution
+     */
+    enum Kind {
+        /** création de répertoire, exécutée séquentiellement dans l'ordre du plan */
+        DIRECTORY,
+        /** résolution interactive d'un conflit, exécutée séquentiellement */
+        CONFLICT,
+        /** transfert de fichier, exécuté en parallèle */
+        TRANSFER,
+        /**
+         * suppression d'un répertoire vidé par des déplacements, exécutée
+         * séquentiellement dans l'ordre du plan
+         */
+        CLEANUP,
+        /**
+         * enregistrement de l'état d'un répertoire, une fois les transferts
+         * terminés, exécuté séquentiellement dans l'ordre du plan
+         */
+        STATE
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne la catégorie de l'opération
+     * @return catégorie déterminant l'ordre d'exécution
+     */
+    Kind getKind();
+
+    /**
+     * Retourne le chemin modifié par l'opération
+     * @return chemin cible
+     */
+    Path getTarget();
+
+    /**
+     * Retourne le nombre d'octets que l'opération doit transférer
+     * @return taille en octets, {@code 0} si l'opération ne transfère rien
+     */
+    long getSize();
+
+    // COMMANDES
+
+    /**
+     * Exécute l'opération, éventuellement depuis un autre thread que celui
+     * de la planification
+     */
+    void execute();
+}
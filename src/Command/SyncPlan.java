@@ -0,0 +1,90 @@
+package Command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plan de synchronisation immuable : liste ordonnée des opérations décidées
+ * lors du parcours des arborescences, avant toute modification.
+ * Les répertoires y apparaissent avant leur contenu.
+ *
+ * @see SyncOperation opération de synchronisation
+ * @see SyncExecutor exécution du plan
+ */
+public class SyncPlan {
+    // ATTRIBUTS
+
+    private final List<SyncOperation> operations;
+    private final long totalSize;
+
+    // CONSTRUCTEUR
+
+    private SyncPlan(List<SyncOperation> operations) {
+        this.operations = Collections.unmodifiableList(operations);
+        long size = 0;
+        for (SyncOperation operation : operations) {
+            size += operation.getSize();
+        }
+        this.totalSize = size;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne les opérations du plan dans l'ordre de leur planification
+     * @return liste non modifiable des opérations
+     */
+    public List<SyncOperation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Retourne le nombre d'octets à transférer par l'ensemble du plan
+     * @return taille totale en octets
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Construction d'un plan au fur et à mesure de la planification
+     */
+    public static class Builder {
+        // ATTRIBUT
+
+        private List<SyncOperation> operations = new ArrayList<>();
+
+        // COMMANDES
+
+        /**
+         * Ajoute une opération à la fin du plan
+         * @param operation opération à ajouter
+         * @return builder courant
+         */
+        public Builder add(SyncOperation operation) {
+            operations.add(operation);
+            return this;
+        }
+
+        /**
+         * Retourne le nombre d'opérations ajoutées depuis la dernière
+         * construction
+         * @return nombre d'opérations
+         */
+        public int size() {
+            return operations.size();
+        }
+
+        /**
+         * Retourne le plan construit et prépare la construction d'un nouveau
+         * plan vide
+         * @return plan construit
+         */
+        public SyncPlan build() {
+            SyncPlan plan = new SyncPlan(operations);
+            operations = new ArrayList<>();
+            return plan;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package Composite;
+
+import Adapter.FileSystem;
+import Visitor.FileVisitor;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Représentation compacte de l'arborescence des fichiers.
+ * Chaque entrée est un indice dans des tableaux de types primitifs (nom,
+ * parent, premier enfant, nombre d'enfants, date de modification, taille) et
+ * les noms identiques ne sont stockés qu'une seule fois. Les enfants d'un
+ * répertoire occupent des indices consécutifs, triés par nom. Une entrée
+ * occupe ainsi une trentaine d'octets, sans objet {@link Path} ni
+ * {@link Date}.
+ * Les visiteurs parcourent l'arbre au travers de vues poids-mouche
+ * ({@link FileLeaf} et {@link DirectoryComposite}) réutilisées à chaque niveau
+ * de profondeur : un composant reçu par un visiteur n'est valable que pendant
+ * sa visite et ne doit pas être conservé.
+ *
+ * @see FileComponent interface de manipulation de fichier
+ */
+public class CompactFileTree {
+    // ATTRIBUTS
+
+    private static final int ROOT = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Path root;
+    private final List<String> names;
+    private final Map<String, Integer> nameIndexes;
+    private final BitSet directories;
+    private final BitSet pruned;
+    private int[] nameOf;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] childCount;
+    private long[] lastModified;
+    private long[] size;
+    private int count;
+
+    private final List<LeafView> leafViews;
+    private final List<DirectoryView> directoryViews;
+
+    // CONSTRUCTEUR
+
+    private CompactFileTree(Path root) {
+        this.root = root;
+        this.names = new ArrayList<>();
+        this.nameIndexes = new HashMap<>();
+        this.directories = new BitSet();
+        this.pruned = new BitSet();
+        this.nameOf = new int[INITIAL_CAPACITY];
+        this.parent = new int[INITIAL_CAPACITY];
+        this.firstChild = new int[INITIAL_CAPACITY];
+        this.childCount = new int[INITIAL_CAPACITY];
+        this.lastModified = new long[INITIAL_CAPACITY];
+        this.size = new long[INITIAL_CAPACITY];
+        this.leafViews = new ArrayList<>();
+        this.directoryViews = new ArrayList<>();
+    }
+
+    /**
+     * Parcourt le système de fichiers en largeur à partir du chemin fourni et
+     * construit l'arborescence compacte. Les sous-répertoires retenus par le
+     * filtre d'élagage sont marqués inchangés et ne sont pas listés : seuls
+     * leurs sous-répertoires connus et encore présents leur sont ajoutés.
+     * @param fileSystem système de fichiers à parcourir
+     * @param root chemin du fichier ou répertoire racine
+     * @param pruneFilter filtre des sous-répertoires inchangés
+     * @return arborescence compacte
+     */
+    public static CompactFileTree build(FileSystem fileSystem, Path root,
+            PruneFilter pruneFilter) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(root);
+        if (attributes == null) {
+            throw new IllegalArgumentException("Root does not exist: " + root);
+        }
+        CompactFileTree tree = new CompactFileTree(root);
+        tree.append(-1, "", attributes);
+        List<Child> children = new ArrayList<>();
+        Comparator<Child> byName = Comparator.comparing(child -> child.name);
+        for (int node = ROOT; node < tree.count; node++) {
+            if (!tree.directories.get(node)) {
+                continue;
+            }
+            if (tree.pruned.get(node)) {
+                for (Path path : pruneFilter.subdirectories(tree.getPath(node))) {
+                    BasicFileAttributes childAttributes = fileSystem.getAttributes(path);
+                    if (childAttributes != null && childAttributes.isDirectory()) {
+                        children.add(new Child(path,
+                                path.getFileName().toString(), childAttributes));
+                    }
+                }
+            } else {
+                fileSystem.listFilesWithAttributes(tree.getPath(node),
+                        (path, childAttributes) -> children.add(new Child(path,
+                                path.getFileName().toString(), childAttributes)));
+                children.sort(byName);
+            }
+            tree.firstChild[node] = tree.count;
+            tree.childCount[node] = children.size();
+            for (Child child : children) {
+                if (child.attributes.isDirectory()) {
+                    tree.pruned.set(tree.count,
+                            pruneFilter.test(child.path, child.attributes));
+                }
+                tree.append(node, child.name, child.attributes);
+            }
+            children.clear();
+        }
+        tree.nameIndexes.clear();
+        return tree;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne la racine de l'arborescence sous forme de composant
+     * @return vue de la racine, une feuille si la racine est un fichier
+     */
+    public FileComponent getRoot() {
+        return view(ROOT, 0);
+    }
+
+    /**
+     * Retourne le nombre d'entrées de l'arborescence, racine comprise
+     * @return nombre de fichiers et répertoires
+     */
+    public int size() {
+        return count;
+    }
+
+    // OUTILS
+
+    /**
+     * Reconstruit le chemin absolu d'une entrée à partir de ses parents
+     * @param node indice de l'entrée
+     * @return chemin de l'entrée
+     */
+    private Path getPath(int node) {
+        if (node == ROOT) {
+            return root;
+        }
+        return getPath(parent[node]).resolve(names.get(nameOf[node]));
+    }
+
+    /**
+     * Ajoute une entrée à la fin des tableaux
+     * @param parentNode indice du répertoire parent, {@code -1} pour la racine
+     * @param name nom de l'entrée dans son répertoire
+     * @param attributes attributs de l'entrée
+     */
+    private void append(int parentNode, String name, BasicFileAttributes attributes) {
+        if (count == nameOf.length) {
+            int capacity = count * 2;
+            nameOf = Arrays.copyOf(nameOf, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+            size = Arrays.copyOf(size, capacity);
+        }
+        Integer nameIndex = nameIndexes.get(name);
+        if (nameIndex == null) {
+            nameIndex = names.size();
+            names.add(name);
+            nameIndexes.put(name, nameIndex);
+        }
+        nameOf[count] = nameIndex;
+        parent[count] = parentNode;
+        lastModified[count] = attributes.lastModifiedTime().toMillis();
+        size[count] = attributes.size();
+        directories.set(count, attributes.isDirectory());
+        count++;
+    }
+
+    /**
+     * Positionne la vue du niveau de profondeur donné sur une entrée
+     * @param node indice de l'entrée
+     * @param depth profondeur de l'entrée
+     * @return vue de l'entrée
+     */
+    private FileComponent view(int node, int depth) {
+        if (directories.get(node)) {
+            while (directoryViews.size() <= depth) {
+                directoryViews.add(new DirectoryView(directoryViews.size()));
+            }
+            DirectoryView view = directoryViews.get(depth);
+            view.node = node;
+            return view;
+        }
+        while (leafViews.size() <= depth) {
+            leafViews.add(new LeafView());
+        }
+        LeafView view = leafViews.get(depth);
+        view.node = node;
+        return view;
+    }
+
+    /**
+     * Entrée lue lors du listage d'un répertoire, avant son ajout
+     */
+    private record Child(
+            Path path, String name, BasicFileAttributes attributes) {
+    }
+
+    /**
+     * Vue poids-mouche d'un fichier de l'arborescence
+     */
+    private class LeafView extends FileLeaf {
+        private int node;
+
+        LeafView() {
+            super(null, null);
+        }
+
+        @Override
+        public Path getPath() {
+            return CompactFileTree.this.getPath(node);
+        }
+
+        @Override
+        public Date getLastModified() {
+            return new Date(lastModified[node]);
+        }
+
+        @Override
+        public long getSize() {
+            return size[node];
+        }
+    }
+
+    /**
+     * Vue poids-mouche d'un répertoire de l'arborescence, ses enfants sont
+     * exposés par une liste qui positionne les vues du niveau suivant
+     */
+    private class DirectoryView extends DirectoryComposite {
+        private final int depth;
+        private final List<FileComponent> children;
+        private int node;
+
+        DirectoryView(int depth) {
+            super(null, null);
+            this.depth = depth;
+            this.children = new ChildrenView();
+        }
+
+        @Override
+        public Path getPath() {
+            return CompactFileTree.this.getPath(node);
+        }
+
+        @Override
+        public Date getLastModified() {
+            return new Date(lastModified[node]);
+        }
+
+        @Override
+        public List<FileComponent> getChildren() {
+            return children;
+        }
+
+        @Override
+        public boolean isPruned() {
+            return pruned.get(node);
+        }
+
+        @Override
+        public void add(FileComponent child) {
+            throw new UnsupportedOperationException(
+                    "a compact file tree cannot be modified");
+        }
+
+        @Override
+        public void accept(FileVisitor fileVisitor) {
+            fileVisitor.visitDirectory(this);
+        }
+
+        private class ChildrenView extends AbstractList<FileComponent>
+                implements RandomAccess {
+            @Override
+            public FileComponent get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return view(firstChild[node] + index, depth + 1);
+            }
+
+            @Override
+            public int size() {
+                return childCount[node];
+            }
+        }
+    }
+}
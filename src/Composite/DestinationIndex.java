@@ -0,0 +1,97 @@
+package Composite;
+
+import Adapter.FileSystem;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index des répertoires de l'arborescence de destination, consulté par le
+ * visiteur de synchronisation à la place d'interrogations du système de
+ * fichiers pour chaque fichier source.
+ * L'index est soit construit à partir d'une arborescence de destination
+ * parcourue en une seule fois, soit lu à la demande : chaque répertoire est
+ * alors listé une seule fois au moment de sa visite, sans conserver
+ * l'arborescence complète en mémoire.
+ *
+ * @see DirectoryComposite répertoire de la structure composite
+ */
+public class DestinationIndex {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final Path root;
+    private final Map<Path, DirectoryComposite> directories;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur d'un index lu à la demande
+     * @param fileSystem système de fichiers de la destination
+     * @param root chemin du répertoire destination
+     */
+    public DestinationIndex(FileSystem fileSystem, Path root) {
+        this.fileSystem = fileSystem;
+        this.root = root;
+        this.directories = null;
+    }
+
+    /**
+     * Constructeur d'un index des répertoires d'une arborescence déjà
+     * parcourue
+     * @param fileSystem système de fichiers de la destination
+     * @param rootComponent racine de l'arborescence de destination
+     */
+    public DestinationIndex(FileSystem fileSystem, FileComponent rootComponent) {
+        this.fileSystem = fileSystem;
+        this.root = rootComponent.getPath();
+        this.directories = new HashMap<>();
+        if (rootComponent instanceof DirectoryComposite directory) {
+            index(directory);
+        }
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne le répertoire de destination correspondant à un chemin
+     * relatif, dont les enfants sont triés par nom. Un répertoire élagué lors
+     * du parcours de la destination est lu à la demande.
+     * @param relative chemin relatif à la racine de la destination
+     * @return répertoire de destination, {@code null} s'il n'existe pas
+     */
+    public DirectoryComposite getDirectory(Path relative) {
+        if (directories != null) {
+            DirectoryComposite directory = directories.get(relative);
+            if (directory == null || !directory.isPruned()) {
+                return directory;
+            }
+        }
+        Path path = root.resolve(relative);
+        BasicFileAttributes attributes = fileSystem.getAttributes(path);
+        if (attributes == null || !attributes.isDirectory()) {
+            return null;
+        }
+        return new LazyDirectoryComposite(fileSystem, path,
+                new Date(attributes.lastModifiedTime().toMillis()),
+                PruneFilter.NONE);
+    }
+
+    // OUTILS
+
+    /**
+     * Ajoute récursivement un répertoire et ses sous-répertoires à l'index
+     * @param directory répertoire à indexer
+     */
+    private void index(DirectoryComposite directory) {
+        directories.put(root.relativize(directory.getPath()), directory);
+        for (FileComponent child : directory.getChildren()) {
+            if (child instanceof DirectoryComposite subDirectory) {
+                index(subDirectory);
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import Visitor.FileVisitor;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -21,9 +22,17 @@ import java.util.List;
 public class DirectoryComposite implements FileComponent {
     // ATTRIBUTS
 
+    /**
+     * Ordre des enfants d'un répertoire : nom du fichier ou du répertoire
+     */
+    public static final Comparator<FileComponent> BY_NAME =
+            Comparator.comparing(
+                    component -> component.getPath().getFileName().toString());
+
     private Path path;
     private Date lastModified;
     private List<FileComponent> children;
+    private boolean pruned;
 
     // CONSTRUCTEUR
 
@@ -54,8 +63,29 @@ public class DirectoryComposite implements FileComponent {
         return children;
     }
 
+    /**
+     * Indique si le contenu direct du répertoire n'a pas été listé parce
+     * qu'il est inchangé depuis la dernière synchronisation : ses enfants se
+     * limitent alors à ses sous-répertoires connus
+     * @return {@code true} si les fichiers du répertoire doivent être ignorés
+     * par les visiteurs de synchronisation
+     * @see PruneFilter filtre d'élagage
+     */
+    public boolean isPruned() {
+        return pruned;
+    }
+
     // COMMANDES
 
+    /**
+     * Marque le répertoire comme inchangé : son contenu direct n'est pas
+     * listé
+     * @param pruned {@code true} si le répertoire est inchangé
+     */
+    public void setPruned(boolean pruned) {
+        this.pruned = pruned;
+    }
+
     /**
      * Ajoute un enfant (fichier ou sous-répertoire) à un répertoire
      * @param child fichier ou sous-répertoire enfant
@@ -71,8 +101,8 @@ public class DirectoryComposite implements FileComponent {
 
     @Override
     public void print() {
-        System.out.println("DirectoryComposite: " + path.toString());
-        for (FileComponent child : children) {
+        System.out.println("DirectoryComposite: " + getPath().toString());
+        for (FileComponent child : getChildren()) {
             child.print();
         }
     }
@@ -17,12 +17,18 @@ public class FileLeaf implements FileComponent {
 
     private Path path;
     private Date lastModified;
+    private long size;
 
-    // CONSTRUCTEUR
+    // CONSTRUCTEURS
 
     public FileLeaf(Path path, Date lastModified) {
+        this(path, lastModified, -1);
+    }
+
+    public FileLeaf(Path path, Date lastModified, long size) {
         this.path = path;
         this.lastModified = lastModified;
+        this.size = size;
     }
 
     // REQUÊTES
@@ -37,6 +43,14 @@ public class FileLeaf implements FileComponent {
         return lastModified;
     }
 
+    /**
+     * Retourne la taille du fichier en octets
+     * @return taille du fichier, {@code -1} si elle n'est pas connue
+     */
+    public long getSize() {
+        return size;
+    }
+
     // COMMANDES
 
     @Override
@@ -46,6 +60,6 @@ public class FileLeaf implements FileComponent {
 
     @Override
     public void print() {
-        System.out.println("file: " + path.toString());
+        System.out.println("file: " + getPath().toString());
     }
 }
@@ -0,0 +1,102 @@
+package Composite;
+
+import Adapter.FileSystem;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Répertoire de la structure composite dont les enfants sont lus à la
+ * demande. Chaque appel à {@link #getChildren()} liste le répertoire et
+ * retourne ses enfants triés par nom, les sous-répertoires étant eux-mêmes
+ * des {@code LazyDirectoryComposite}. Rien n'est conservé entre deux appels :
+ * lors d'un parcours en profondeur par un visiteur, seuls les enfants des
+ * répertoires en cours de visite sont en mémoire, soit une quantité bornée
+ * par la profondeur et la largeur de l'arborescence et non par son nombre
+ * total de fichiers. Les sous-répertoires retenus par le filtre d'élagage sont
+ * marqués inchangés et ne seront pas listés : leurs enfants se limitent à
+ * leurs sous-répertoires connus.
+ *
+ * @see DirectoryComposite répertoire construit entièrement en mémoire
+ */
+public class LazyDirectoryComposite extends DirectoryComposite {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final PruneFilter pruneFilter;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers à parcourir
+     * @param path chemin du répertoire
+     * @param lastModified date de dernière modification
+     * @param pruneFilter filtre des sous-répertoires inchangés
+     */
+    public LazyDirectoryComposite(FileSystem fileSystem, Path path,
+            Date lastModified, PruneFilter pruneFilter) {
+        super(path, lastModified);
+        this.fileSystem = fileSystem;
+        this.pruneFilter = pruneFilter;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Liste le répertoire et retourne ses enfants triés par nom. Un
+     * répertoire élagué n'est pas listé : seuls ses sous-répertoires connus
+     * et encore présents sont retournés.
+     * @return nouvelle liste des composants enfants du répertoire
+     */
+    @Override
+    public List<FileComponent> getChildren() {
+        List<FileComponent> children = new ArrayList<>();
+        if (isPruned()) {
+            for (Path path : pruneFilter.subdirectories(getPath())) {
+                BasicFileAttributes attributes = fileSystem.getAttributes(path);
+                if (attributes != null && attributes.isDirectory()) {
+                    children.add(subDirectory(path, attributes));
+                }
+            }
+            return children;
+        }
+        fileSystem.listFilesWithAttributes(getPath(), (path, attributes) -> {
+            if (attributes.isDirectory()) {
+                children.add(subDirectory(path, attributes));
+            } else {
+                children.add(new FileLeaf(path,
+                        new Date(attributes.lastModifiedTime().toMillis()),
+                        attributes.size()));
+            }
+        });
+        children.sort(BY_NAME);
+        return children;
+    }
+
+    // COMMANDES
+
+    /**
+     * Les enfants sont lus sur le système de fichiers, ils ne peuvent pas être
+     * ajoutés
+     * @param child fichier ou sous-répertoire enfant
+     * @throws UnsupportedOperationException toujours
+     */
+    @Override
+    public void add(FileComponent child) {
+        throw new UnsupportedOperationException(
+                "children of a lazy directory are read from the file system");
+    }
+
+    // OUTILS
+
+    private LazyDirectoryComposite subDirectory(Path path, BasicFileAttributes attributes) {
+        LazyDirectoryComposite child = new LazyDirectoryComposite(fileSystem, path,
+                new Date(attributes.lastModifiedTime().toMillis()), pruneFilter);
+        child.setPruned(pruneFilter.test(path, attributes));
+        return child;
+    }
+}
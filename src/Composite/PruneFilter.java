@@ -0,0 +1,50 @@
+package Composite;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Filtre d'élagage de la construction d'une arborescence : désigne les
+ * sous-répertoires dont le contenu direct est inchangé depuis la dernière
+ * synchronisation, qui ne sont pas listés.
+ * La date de modification d'un répertoire ne reflète que ses entrées
+ * directes : un répertoire élagué n'est donc pas ignoré avec ses
+ * descendants, ses sous-répertoires connus sont examinés à leur tour sans
+ * qu'il soit nécessaire de le lister.
+ *
+ * @see DirectoryComposite#isPruned() répertoire élagué
+ */
+public interface PruneFilter {
+    /**
+     * Filtre qui n'élague aucun répertoire
+     */
+    PruneFilter NONE = new PruneFilter() {
+        @Override
+        public boolean test(Path path, BasicFileAttributes attributes) {
+            return false;
+        }
+
+        @Override
+        public List<Path> subdirectories(Path directory) {
+            return List.of();
+        }
+    };
+
+    /**
+     * Indique si le contenu direct d'un sous-répertoire est inchangé,
+     * éventuellement depuis plusieurs tâches simultanées
+     * @param path chemin du sous-répertoire
+     * @param attributes attributs du sous-répertoire
+     * @return {@code true} si le sous-répertoire n'a pas à être listé
+     */
+    boolean test(Path path, BasicFileAttributes attributes);
+
+    /**
+     * Retourne les sous-répertoires connus d'un répertoire élagué, qui
+     * peuvent ne plus exister
+     * @param directory chemin du répertoire élagué
+     * @return chemins des sous-répertoires, triés par nom
+     */
+    List<Path> subdirectories(Path directory);
+}
@@ -0,0 +1,319 @@
+package Decorator;
+
+import Adapter.FileSystem;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Décorateur d'un {@link FileSystem} limitant le nombre d'opérations
+ * simultanées sur chaque périphérique de stockage.
+ * Chaque {@link FileStore} dispose d'un sémaphore dont le nombre de permis
+ * est configurable par point de montage, par exemple 64 pour un disque NVMe
+ * et 2 pour un disque dur USB. Les opérations lancées depuis de nombreux
+ * threads, virtuels notamment, attendent ainsi leur tour sur les
+ * périphériques lents sans ralentir ceux qui supportent une forte
+ * concurrence. Une copie entre deux périphériques réserve un permis sur
+ * chacun, toujours dans le même ordre pour éviter les interblocages.
+ * Le périphérique d'un chemin n'est pas recherché à chaque opération : il
+ * est déterminé une fois pour chaque racine de synchronisation et chaque
+ * point de montage limité, puis attribué aux chemins situés sous eux par le
+ * plus long préfixe. Les chemins hors de ces racines ne sont pas limités.
+ *
+ * @see FileSystem interface décorée
+ */
+public class ThrottledFileSystem implements FileSystem {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final int defaultLimit;
+    private final Map<FileStore, Device> devices;
+    private final List<Root> roots;
+    private final AtomicInteger deviceCount;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers décoré
+     * @param defaultLimit nombre maximal d'opérations simultanées sur un
+     * périphérique sans limite configurée
+     */
+    public ThrottledFileSystem(FileSystem fileSystem, int defaultLimit) {
+        if (defaultLimit < 1) {
+            throw new IllegalArgumentException(
+                    "limit must be positive: " + defaultLimit);
+        }
+        this.fileSystem = fileSystem;
+        this.defaultLimit = defaultLimit;
+        this.devices = new ConcurrentHashMap<>();
+        this.roots = new CopyOnWriteArrayList<>();
+        this.deviceCount = new AtomicInteger();
+    }
+
+    // REQUÊTES
+
+    @Override
+    public List<Path> listFiles(Path directory) {
+        return throttle(directory, () -> fileSystem.listFiles(directory));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Les entrées sont lues en réservant un permis, puis transmises une fois
+     * le permis libéré : l'action appliquée peut ainsi elle-même accéder au
+     * périphérique sans risquer d'interblocage.
+     */
+    @Override
+    public void listFilesWithAttributes(
+            Path directory, BiConsumer<Path, BasicFileAttributes> consumer) {
+        List<Map.Entry<Path, BasicFileAttributes>> entries = new ArrayList<>();
+        throttle(directory, () -> {
+            fileSystem.listFilesWithAttributes(directory, (path, attributes) ->
+                    entries.add(Map.entry(path, attributes)));
+            return null;
+        });
+        for (Map.Entry<Path, BasicFileAttributes> entry : entries) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public BasicFileAttributes getAttributes(Path path) {
+        return throttle(path, () -> fileSystem.getAttributes(path));
+    }
+
+    @Override
+    public Date getFileLastModified(Path file) {
+        return throttle(file, () -> fileSystem.getFileLastModified(file));
+    }
+
+    @Override
+    public String getContentHash(Path file) {
+        return throttle(file, () -> fileSystem.getContentHash(file));
+    }
+
+    @Override
+    public boolean exists(Path path) {
+        return throttle(path, () -> fileSystem.exists(path));
+    }
+
+    @Override
+    public boolean isDirectory(Path path) {
+        return throttle(path, () -> fileSystem.isDirectory(path));
+    }
+
+    // COMMANDES
+
+    /**
+     * Défini le nombre maximal d'opérations simultanées sur le périphérique
+     * contenant le chemin donné. Doit être appelée avant toute opération
+     * sur ce périphérique.
+     * @param path chemin existant sur le périphérique
+     * @param limit nombre maximal d'opérations simultanées
+     * @throws IOException exception levée si le périphérique est introuvable
+     */
+    public void setLimit(Path path, int limit) throws IOException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        Device device = new Device(limit);
+        devices.put(Files.getFileStore(path), device);
+        register(path, device);
+    }
+
+    /**
+     * Enregistre une racine de synchronisation : les chemins situés sous
+     * elle sont attribués au périphérique qui la contient, recherché une
+     * seule fois
+     * @param root répertoire racine, éventuellement encore inexistant
+     */
+    public void addRoot(Path root) {
+        FileStore store = findStore(root.toAbsolutePath());
+        if (store != null) {
+            register(root, devices.computeIfAbsent(
+                    store, key -> new Device(defaultLimit)));
+        }
+    }
+
+    @Override
+    public long copyFile(Path source, Path destination, Runnable published) {
+        return throttle(source, destination,
+                () -> fileSystem.copyFile(source, destination, published));
+    }
+
+    @Override
+    public long copyFile(Path source, Path destination, long size,
+            Date lastModified, Runnable published) {
+        return throttle(source, destination, () -> fileSystem.copyFile(
+                source, destination, size, lastModified, published));
+    }
+
+    @Override
+    public void commit() {
+        fileSystem.commit();
+    }
+
+    @Override
+    public boolean moveFile(Path source, Path destination) {
+        return throttle(source, () -> fileSystem.moveFile(source, destination));
+    }
+
+    @Override
+    public boolean linkFile(Path existing, Path link) {
+        return throttle(existing, () -> fileSystem.linkFile(existing, link));
+    }
+
+    @Override
+    public void deleteFile(Path path) {
+        throttle(path, () -> {
+            fileSystem.deleteFile(path);
+            return null;
+        });
+    }
+
+    @Override
+    public void createDirectory(Path path) {
+        throttle(path, () -> {
+            fileSystem.createDirectory(path);
+            return null;
+        });
+    }
+
+    // OUTILS
+
+    /**
+     * Exécute une opération sur le chemin donné en réservant un permis de
+     * son périphérique
+     * @param path chemin concerné par l'opération
+     * @param operation opération à exécuter
+     * @return résultat de l'opération
+     */
+    private <T> T throttle(Path path, Supplier<T> operation) {
+        return throttle(deviceOf(path), operation);
+    }
+
+    /**
+     * Exécute une opération entre deux chemins en réservant un permis sur le
+     * périphérique de chacun, dans l'ordre de création des périphériques
+     * @param source chemin lu par l'opération
+     * @param destination chemin écrit par l'opération
+     * @param operation opération à exécuter
+     * @return résultat de l'opération
+     */
+    private <T> T throttle(Path source, Path destination, Supplier<T> operation) {
+        Device first = deviceOf(source);
+        Device second = deviceOf(destination);
+        if (first == second || first == null || second == null) {
+            return throttle(first != null ? first : second, operation);
+        }
+        if (second.order < first.order) {
+            Device device = first;
+            first = second;
+            second = device;
+        }
+        Device last = second;
+        return throttle(first, () -> throttle(last, operation));
+    }
+
+    /**
+     * Exécute une opération en réservant un permis du périphérique donné
+     * @param device périphérique, {@code null} s'il est inconnu
+     * @param operation opération à exécuter
+     * @return résultat de l'opération
+     */
+    private static <T> T throttle(Device device, Supplier<T> operation) {
+        if (device == null) {
+            return operation.get();
+        }
+        device.permits.acquireUninterruptibly();
+        try {
+            return operation.get();
+        } finally {
+            device.permits.release();
+        }
+    }
+
+    /**
+     * Associe un préfixe de chemins à un périphérique, les préfixes les plus
+     * longs restant en tête pour être trouvés en premier
+     * @param prefix chemin dont les descendants sont sur le périphérique
+     * @param device périphérique
+     */
+    private synchronized void register(Path prefix, Device device) {
+        Path absolute = prefix.toAbsolutePath().normalize();
+        roots.removeIf(root -> root.prefix().equals(absolute));
+        roots.add(new Root(absolute, device));
+        roots.sort(Comparator.comparingInt(
+                (Root root) -> root.prefix().getNameCount()).reversed());
+    }
+
+    /**
+     * Retourne le périphérique contenant un chemin, celui du plus long
+     * préfixe enregistré
+     * @param path chemin
+     * @return périphérique, {@code null} si le chemin n'est sous aucune
+     * racine enregistrée
+     */
+    private Device deviceOf(Path path) {
+        Path absolute = path.toAbsolutePath();
+        for (Root root : roots) {
+            if (absolute.startsWith(root.prefix())) {
+                return root.device();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recherche le périphérique du plus proche répertoire existant
+     * @param directory répertoire
+     * @return périphérique, {@code null} s'il est introuvable
+     */
+    private static FileStore findStore(Path directory) {
+        for (Path current = directory; current != null; current = current.getParent()) {
+            try {
+                return Files.getFileStore(current);
+            } catch (IOException exception) {
+                // répertoire inexistant : essai avec son parent
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Racine de chemins situés sur un même périphérique
+     * @param prefix chemin absolu de la racine
+     * @param device périphérique de la racine
+     */
+    private record Root(Path prefix, Device device) {
+    }
+
+    /**
+     * Sémaphore d'un périphérique et rang d'acquisition, identique pour
+     * toutes les copies
+     */
+    private class Device {
+        private final Semaphore permits;
+        private final int order;
+
+        Device(int limit) {
+            this.permits = new Semaphore(limit);
+            this.order = deviceCount.getAndIncrement();
+        }
+    }
+}
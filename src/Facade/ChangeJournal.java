@@ -0,0 +1,97 @@
+package Facade;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Journal des chemins modifiés depuis la dernière synchronisation, alimenté
+ * par les évènements de surveillance des répertoires source et destination.
+ * Les chemins sont relatifs à la racine du profil, un même chemin modifié
+ * plusieurs fois n'est retenu qu'une fois et un chemin dont un ancêtre est
+ * déjà dans le journal est ignoré. Un débordement signale que des évènements
+ * ont été perdus et qu'une analyse complète est nécessaire.
+ *
+ * @see DirectoryWatcher surveillance des répertoires
+ */
+public class ChangeJournal {
+    // ATTRIBUTS
+
+    private final TreeSet<Path> paths;
+    private boolean overflowed;
+
+    // CONSTRUCTEUR
+
+    public ChangeJournal() {
+        this.paths = new TreeSet<>();
+    }
+
+    // REQUÊTES
+
+    /**
+     * Indique si des évènements ont été perdus
+     * @return {@code true} si une analyse complète est nécessaire
+     */
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Indique si aucun changement n'a été enregistré
+     * @return {@code true} si le journal ne contient aucun chemin ni
+     * débordement
+     */
+    public boolean isEmpty() {
+        return paths.isEmpty() && !overflowed;
+    }
+
+    /**
+     * Retourne les chemins modifiés, triés, sans ceux dont un ancêtre est
+     * également modifié
+     * @return chemins relatifs modifiés
+     */
+    public List<Path> getPaths() {
+        List<Path> coalesced = new ArrayList<>();
+        for (Path path : paths) {
+            if (!hasAncestorIn(path)) {
+                coalesced.add(path);
+            }
+        }
+        return coalesced;
+    }
+
+    // COMMANDES
+
+    /**
+     * Enregistre la modification d'un fichier ou répertoire
+     * @param relative chemin relatif à la racine du profil
+     */
+    public void add(Path relative) {
+        paths.add(relative);
+    }
+
+    /**
+     * Signale que des évènements ont été perdus
+     */
+    public void markOverflow() {
+        overflowed = true;
+    }
+
+    // OUTILS
+
+    /**
+     * Vérifie si un ancêtre du chemin donné est dans le journal
+     * @param path chemin relatif
+     * @return {@code true} si un ancêtre a été modifié
+     */
+    private boolean hasAncestorIn(Path path) {
+        for (Path ancestor = path.getParent(); ancestor != null;
+                ancestor = ancestor.getParent()) {
+            if (paths.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,195 @@
+package Facade;
+
+import Strategy.WriteCommitter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Surveillance des répertoires source et destination d'un profil à l'aide
+ * d'un {@link WatchService} (inotify sous Linux). Chaque répertoire des deux
+ * arborescences est enregistré, y compris ceux créés pendant la surveillance.
+ * Les évènements sont regroupés dans un {@link ChangeJournal} jusqu'à ce
+ * qu'aucun nouvel évènement n'arrive pendant le délai d'attente, afin qu'une
+ * rafale de modifications ne déclenche qu'une synchronisation.
+ * Les écritures de la synchronisation elle-même ne sont pas des
+ * changements : les fichiers temporaires sont ignorés, ainsi que les
+ * évènements des chemins écrits lors de la synchronisation précédente reçus
+ * dans le premier regroupement qui la suit.
+ *
+ * @see ChangeJournal journal des chemins modifiés
+ */
+public final class DirectoryWatcher implements Closeable {
+    // ATTRIBUTS
+
+    /**
+     * Durée maximale de regroupement des évènements, en nombre de délais
+     * d'attente, pour qu'un fichier modifié en continu ne bloque pas la
+     * synchronisation
+     */
+    private static final int MAX_DEBOUNCE_ROUNDS = 10;
+
+    private final Path source;
+    private final Path destination;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories;
+    private final Set<Path> written;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur, enregistre tous les répertoires des deux arborescences
+     * @param source chemin du répertoire source
+     * @param destination chemin du répertoire destination
+     * @throws IOException exception levée si la surveillance est impossible
+     */
+    public DirectoryWatcher(Path source, Path destination) throws IOException {
+        this.source = source;
+        this.destination = destination;
+        this.watchService = source.getFileSystem().newWatchService();
+        this.directories = new HashMap<>();
+        this.written = new HashSet<>();
+        registerAll();
+    }
+
+    // COMMANDES
+
+    /**
+     * Enregistre tous les répertoires des deux arborescences, utilisé après un
+     * débordement pour ne manquer aucun répertoire créé entre-temps
+     * @throws IOException exception levée si un répertoire ne peut pas être
+     * surveillé
+     */
+    public void registerAll() throws IOException {
+        registerTree(source);
+        registerTree(destination);
+    }
+
+    /**
+     * Ignore les évènements des chemins écrits par une synchronisation dans
+     * le prochain regroupement d'évènements
+     * @param paths chemins source ou destination écrits
+     */
+    public void ignoreWritten(Collection<Path> paths) {
+        written.addAll(paths);
+    }
+
+    /**
+     * Attend des changements puis les regroupe jusqu'à ce qu'aucun évènement
+     * n'arrive pendant le délai d'attente. Un regroupement ne contenant que
+     * des écritures de la synchronisation est écarté et l'attente reprend.
+     * @param debounceMillis délai d'attente en millisecondes
+     * @return journal des changements observés
+     * @throws InterruptedException exception levée si l'attente est interrompue
+     */
+    public ChangeJournal awaitChanges(long debounceMillis)
+            throws InterruptedException {
+        ChangeJournal journal = new ChangeJournal();
+        while (journal.isEmpty()) {
+            WatchKey key = watchService.take();
+            for (int round = 0; key != null && round < MAX_DEBOUNCE_ROUNDS; round++) {
+                collect(key, journal);
+                key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            }
+            if (key != null) {
+                collect(key, journal);
+            }
+            written.clear();
+        }
+        return journal;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    // OUTILS
+
+    /**
+     * Enregistre les évènements d'un répertoire dans le journal, et surveille
+     * les répertoires nouvellement créés
+     * @param key clé du répertoire ayant reçu des évènements
+     * @param journal journal à compléter
+     */
+    private void collect(WatchKey key, ChangeJournal journal) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                journal.markOverflow();
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (WriteCommitter.isTemporary(child)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    registerTree(child);
+                } catch (IOException exception) {
+                    System.out.println("error with the watch of directory "
+                            + exception.getMessage());
+                    journal.markOverflow();
+                }
+            }
+            if (!written.contains(child)) {
+                journal.add(relativize(child));
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Enregistre un répertoire et tous ses sous-répertoires
+     * @param root répertoire racine à surveiller
+     * @throws IOException exception levée si un répertoire ne peut pas être
+     * surveillé
+     */
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                WatchKey key = directory.register(watchService,
+                        ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Calcule le chemin relatif d'un chemin surveillé par rapport à la racine
+     * de son arborescence
+     * @param path chemin source ou destination
+     * @return chemin relatif à la racine du profil
+     */
+    private Path relativize(Path path) {
+        if (path.startsWith(source)) {
+            return source.relativize(path);
+        }
+        return destination.relativize(path);
+    }
+}
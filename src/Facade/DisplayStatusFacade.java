@@ -1,42 +1,73 @@
 package Facade;
 
 import Adapter.FileSystem;
-import Composite.DirectoryComposite;
 import Composite.FileComponent;
-import FactoryMethod.FileComponentCreator;
-import FactoryMethod.FileCreator;
 import Builder.Profile;
 import Singleton.Registry;
+import Visitor.DirectoryDigest;
 import Visitor.DisplayStatusVisitor;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.Date;
 
 /**
  * Affichage du status de la synchronisation d'un profil donné.
  * Parcourt l'arborescence des fichiers d'un profil et compare leurs états
  * avec les données du registre de synchronisation et affiche le statut
  * complet du profil, en incluant les données et les fichiers modifiés
+ * Les empreintes de Merkle des deux arborescences sont d'abord comparées :
+ * si elles sont identiques, le profil est synchronisé et seuls les
+ * répertoires modifiés depuis la dernière synchronisation ont été listés,
+ * les autres n'étant examinés que par la lecture de leurs attributs.
+ *
+ * @see DirectoryDigest empreinte d'une arborescence
  */
 public class DisplayStatusFacade {
     // ATTRIBUTS
 
     private Registry registry;
     private FileSystem fileSystem;
-    private FileComponentCreator componentCreator;
+    private FileTreeBuilder treeBuilder;
+    private DirectoryDigest directoryDigest;
 
     // CONSTRUCTEUR
 
     public DisplayStatusFacade(FileSystem fileSystem) throws IOException, ClassNotFoundException {
         this.fileSystem = fileSystem;
-        this.registry = Registry.getInstance();
-        this.componentCreator = new FileCreator();
+        this.treeBuilder = new FileTreeBuilder(fileSystem);
+    }
+
+    // REQUÊTE
+
+    /**
+     * Indique si les répertoires source et destination d'un profil sont
+     * identiques, en comparant leurs empreintes de Merkle
+     * @param profile profil à examiner
+     * @return {@code true} si les deux arborescences ont la même empreinte
+     */
+    public boolean isInSync(Profile profile) {
+        openRegistry(profile);
+        Path root = Path.of("");
+        DirectoryDigest.Digest source =
+                directoryDigest.compute(profile.getSourceDirectory(), root, false);
+        DirectoryDigest.Digest destination =
+                directoryDigest.compute(profile.getDestinationDirectory(), root, true);
+        return source != null && destination != null
+                && source.tree().equals(destination.tree());
     }
 
     // COMMANDES
 
+    /**
+     * Défini le nombre maximal de répertoires parcourus simultanément lors de
+     * la construction de l'arborescence
+     * @param parallelism niveau de parallélisme, strictement positif
+     */
+    public void setParallelism(int parallelism) {
+        this.treeBuilder = new FileTreeBuilder(fileSystem, parallelism);
+    }
+
     /**
      * Affiche le statut complet d'un profil
      * @param profile profil à examiner
@@ -46,58 +77,42 @@ public class DisplayStatusFacade {
         System.out.println("Name: " + profile.getProfileName());
         System.out.println("Source directory: " + profile.getSourceDirectory());
         System.out.println("Destination directory: " + profile.getDestinationDirectory());
+        openRegistry(profile);
+        Date lastSynchronization = registry.getLastSyncDateUnder("");
+        System.out.println("Last synchronization: "
+                + (lastSynchronization == null ? "never" : lastSynchronization));
+        System.out.println();
+        long start = System.nanoTime();
+        boolean inSync = isInSync(profile);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (inSync) {
+            System.out.println("Status: in sync (checked in " + elapsed + " ms)");
+            return;
+        }
+        System.out.println("Status: out of sync");
         System.out.println();
         System.out.println("Content:");
         registry.printAllData();
         System.out.println();
         Path sourceDirectory = profile.getSourceDirectory();
-        FileComponent root = buildFileTree(sourceDirectory);
+        FileComponent root = treeBuilder.build(sourceDirectory);
         System.out.println("File status:");
         DisplayStatusVisitor statusVisitor = new DisplayStatusVisitor(registry, sourceDirectory);
         root.accept(statusVisitor);
     }
 
-    // OUTILS
-
-    /**
-     * Parcourt les fichiers à partir du chemin du dossier source fournit et
-     * construit une structure composite représentant l'arborescence
-     * complète des fichiers
-     * @param sourceDirectory chemin du dossier source pour construire l'arbre
-     * des fichiers
-     * @return structure composite
-     */
-    private FileComponent buildFileTree(Path sourceDirectory) {
-        FileComponent rootComponent = componentCreator.factoryMethod(
-                sourceDirectory,
-                fileSystem.getFileLastModified(sourceDirectory)
-        );
-        if (!(rootComponent instanceof DirectoryComposite root)) {
-            throw new IllegalArgumentException("Root is not a DirectoryComposite");
-        }
-        buildFileTreerec(root, sourceDirectory);
-        return root;
-    }
+    // OUTIL
 
     /**
-     * Construction récursive de l'arborescence des fichiers et répertoires à
-     * partie du répertoire source
-     * @param root composant parent auquel on ajoute fichiers et sous-répertoires
-     * @param curPath chemin actuel du répertoire ou fichier
+     * Ouvre le registre d'un profil, en attendant que les autres processus
+     * qui l'utilisent se terminent
+     * @param profile profil dont le registre est ouvert
      */
-    private void buildFileTreerec(DirectoryComposite root, Path curPath) {
-        List<Path> data = fileSystem.listFiles(curPath);
-        for (Path path : data) {
-            FileComponent component = componentCreator.factoryMethod(
-                    path, fileSystem.getFileLastModified(path)
-            );
-
-            root.add(component);
-
-            if (component instanceof DirectoryComposite directoryComposite) {
-                buildFileTreerec(directoryComposite, path);
-            }
+    private void openRegistry(Profile profile) {
+        Registry profileRegistry = Registry.getInstance(profile.getProfileName());
+        if (profileRegistry != registry) {
+            registry = profileRegistry;
+            directoryDigest = new DirectoryDigest(fileSystem, registry);
         }
     }
-
 }
@@ -0,0 +1,232 @@
+package Facade;
+
+import Adapter.FileSystem;
+import Composite.CompactFileTree;
+import Composite.DirectoryComposite;
+import Composite.FileComponent;
+import Composite.LazyDirectoryComposite;
+import Composite.PruneFilter;
+import FactoryMethod.FileComponentCreator;
+import FactoryMethod.FileCreator;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Construction parallèle de l'arborescence des fichiers sous forme de
+ * structure composite, partagée par les façades de synchronisation et
+ * d'affichage du statut.
+ * Chaque répertoire est parcouru par une tâche {@link RecursiveAction}
+ * distincte, exécutée dans un {@link ForkJoinPool} dont le niveau de
+ * parallélisme est configurable. Les enfants d'un répertoire sont triés par
+ * nom avant d'être ajoutés, l'arbre obtenu est donc identique d'une exécution
+ * à l'autre quel que soit l'ordonnancement des tâches. Un filtre d'élagage
+ * optionnel désigne les sous-répertoires inchangés depuis la dernière
+ * synchronisation : ils sont ajoutés à l'arbre, marqués inchangés, sans être
+ * listés, avec pour seuls enfants leurs sous-répertoires connus, examinés à
+ * leur tour.
+ *
+ * @see DirectoryComposite répertoire de la structure composite
+ * @see FileComponentCreator fabrique des composants
+ */
+public class FileTreeBuilder {
+    // ATTRIBUTS
+
+    private final FileSystem fileSystem;
+    private final FileComponentCreator componentCreator;
+    private final int parallelism;
+    private PruneFilter pruneFilter;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur utilisant autant de tâches simultanées que de processeurs
+     * disponibles
+     * @param fileSystem système de fichiers à parcourir
+     */
+    public FileTreeBuilder(FileSystem fileSystem) {
+        this(fileSystem, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers à parcourir
+     * @param parallelism nombre maximal de répertoires parcourus simultanément
+     */
+    public FileTreeBuilder(FileSystem fileSystem, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                    "parallelism must be positive: " + parallelism);
+        }
+        this.fileSystem = fileSystem;
+        this.componentCreator = new FileCreator();
+        this.parallelism = parallelism;
+        this.pruneFilter = PruneFilter.NONE;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne le nombre maximal de répertoires parcourus simultanément
+     * @return niveau de parallélisme
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // COMMANDES
+
+    /**
+     * Défini le filtre des sous-répertoires inchangés, qui ne seront pas
+     * listés. La racine de l'arborescence construite n'est jamais élaguée.
+     * @param pruneFilter filtre appliqué à chaque sous-répertoire,
+     * éventuellement depuis plusieurs tâches simultanées
+     */
+    public void setPruneFilter(PruneFilter pruneFilter) {
+        this.pruneFilter = pruneFilter;
+    }
+
+    /**
+     * Parcourt les fichiers à partir du chemin fourni et construit la
+     * structure composite représentant l'arborescence complète
+     * @param root chemin du fichier ou répertoire racine
+     * @return structure composite, une feuille si {@code root} est un fichier
+     */
+    public FileComponent build(Path root) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(root);
+        if (attributes == null) {
+            throw new IllegalArgumentException("Root does not exist: " + root);
+        }
+        FileComponent rootComponent =
+                componentCreator.factoryMethod(root, attributes);
+        if (rootComponent instanceof DirectoryComposite directory) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new DirectoryTask(directory));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return rootComponent;
+    }
+
+    /**
+     * Crée la racine d'une arborescence parcourue à la demande : aucun
+     * répertoire n'est listé avant que le visiteur n'en demande les enfants,
+     * et les enfants ne sont pas conservés après leur visite
+     * @param root chemin du fichier ou répertoire racine
+     * @return racine de l'arborescence, une feuille si {@code root} est un
+     * fichier
+     * @see LazyDirectoryComposite répertoire listé à la demande
+     */
+    public FileComponent buildLazy(Path root) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(root);
+        if (attributes == null) {
+            throw new IllegalArgumentException("Root does not exist: " + root);
+        }
+        if (attributes.isDirectory()) {
+            return new LazyDirectoryComposite(fileSystem, root,
+                    new Date(attributes.lastModifiedTime().toMillis()),
+                    pruneFilter);
+        }
+        return componentCreator.factoryMethod(root, attributes);
+    }
+
+    /**
+     * Construit un répertoire et ses enfants directs sans parcourir ses
+     * sous-répertoires, qui sont marqués inchangés, pour resynchroniser le
+     * contenu direct d'un répertoire
+     * @param directory chemin du répertoire
+     * @return répertoire et ses enfants, triés par nom
+     */
+    public DirectoryComposite buildShallow(Path directory) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        DirectoryComposite root = (DirectoryComposite)
+                componentCreator.factoryMethod(directory, attributes);
+        List<FileComponent> children = new ArrayList<>();
+        fileSystem.listFilesWithAttributes(directory, (path, childAttributes) ->
+                children.add(componentCreator.factoryMethod(path, childAttributes)));
+        children.sort(DirectoryComposite.BY_NAME);
+        for (FileComponent child : children) {
+            if (child instanceof DirectoryComposite subDirectory) {
+                subDirectory.setPruned(true);
+            }
+            root.add(child);
+        }
+        return root;
+    }
+
+    /**
+     * Parcourt les fichiers à partir du chemin fourni et construit une
+     * arborescence compacte, stockée dans des tableaux de types primitifs et
+     * parcourue par les visiteurs au travers de vues réutilisées
+     * @param root chemin du fichier ou répertoire racine
+     * @return racine de l'arborescence, une feuille si {@code root} est un
+     * fichier
+     * @see CompactFileTree arborescence compacte
+     */
+    public FileComponent buildCompact(Path root) {
+        return CompactFileTree.build(fileSystem, root, pruneFilter).getRoot();
+    }
+
+    // OUTILS
+
+    /**
+     * Tâche de parcours d'un répertoire : ajoute ses enfants dans l'ordre des
+     * noms, à partir des attributs lus lors du listage, puis lance une
+     * sous-tâche par sous-répertoire. Un répertoire élagué n'est pas listé :
+     * seuls ses sous-répertoires connus et encore présents sont ajoutés.
+     * Seule la tâche d'un répertoire modifie la liste de ses enfants.
+     * Les tâches ne sont jamais sérialisées.
+     */
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final DirectoryComposite directory;
+
+        DirectoryTask(DirectoryComposite directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<FileComponent> children = new ArrayList<>();
+            if (directory.isPruned()) {
+                for (Path path : pruneFilter.subdirectories(directory.getPath())) {
+                    BasicFileAttributes attributes = fileSystem.getAttributes(path);
+                    if (attributes != null && attributes.isDirectory()) {
+                        children.add(subDirectory(path, attributes));
+                    }
+                }
+            } else {
+                fileSystem.listFilesWithAttributes(directory.getPath(),
+                        (path, attributes) -> children.add(attributes.isDirectory()
+                                ? subDirectory(path, attributes)
+                                : componentCreator.factoryMethod(path, attributes)));
+                children.sort(DirectoryComposite.BY_NAME);
+            }
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            for (FileComponent component : children) {
+                directory.add(component);
+                if (component instanceof DirectoryComposite subDirectory) {
+                    subtasks.add(new DirectoryTask(subDirectory));
+                }
+            }
+            invokeAll(subtasks);
+        }
+
+        private DirectoryComposite subDirectory(Path path, BasicFileAttributes attributes) {
+            DirectoryComposite subDirectory = (DirectoryComposite)
+                    componentCreator.factoryMethod(path, attributes);
+            subDirectory.setPruned(pruneFilter.test(path, attributes));
+            return subDirectory;
+        }
+    }
+}
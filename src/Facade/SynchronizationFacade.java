@@ -1,47 +1,90 @@
 package Facade;
 
 import Adapter.FileSystem;
-import Composite.DirectoryComposite;
+import Command.SyncExecutor;
+import Command.SyncOperation;
+import Command.SyncPlan;
+import Decorator.ThrottledFileSystem;
+import Composite.DestinationIndex;
 import Composite.FileComponent;
-import FactoryMethod.DirectoryCreator;
-import FactoryMethod.FileComponentCreator;
-import FactoryMethod.FileCreator;
+import Composite.PruneFilter;
 import Builder.BuilderProfileInterface;
 import Builder.ConcreteProfileBuilder;
 import Builder.Director;
 import Builder.Profile;
+import Singleton.DirectoryState;
 import Singleton.Registry;
+import Strategy.WriteCommitter;
+import Visitor.SnapshotVisitor;
 import Visitor.SyncVisitor;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Date;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 
 /**
  * Simplification de l'utilisation du système de synchronisation.
  * @see Profile profil de synchronisation
  * @see Visitor.SyncVisitor visiteur qui parcourt les fichiers et dossiers pour
- * effectuer les actions de synchronisation
- * @see Registry registre qui gère les profils
+ * planifier les actions de synchronisation
+ * @see Registry registre de synchronisation de chaque profil
  */
 public class SynchronizationFacade {
     // ATTRIBUTS
 
+    /**
+     * Nombre maximal d'opérations simultanées sur un périphérique sans
+     * limite configurée
+     */
+    public static final int DEFAULT_DEVICE_LIMIT = 16;
+
+    /**
+     * Format du nom des répertoires de sauvegarde instantanée, dont l'ordre
+     * alphabétique est l'ordre chronologique
+     */
+    public static final DateTimeFormatter SNAPSHOT_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmss");
+
+    /**
+     * Nombre d'opérations planifiées au-delà duquel le plan est exécuté sans
+     * attendre la fin du parcours à la demande
+     */
+    public static final int STREAMING_PLAN_SIZE = 10_000;
+
     private Registry registry;
     private FileSystem fileSystem;
-    private FileComponentCreator fileComponentCreator;
-    private FileComponentCreator directoryCreator;
+    private FileTreeBuilder treeBuilder;
+    private SyncExecutor executor;
+    private ThrottledFileSystem throttledFileSystem;
+    private int workers;
+    private boolean virtualThreads;
+    private boolean streaming;
+    private boolean compact;
+    private boolean prune;
+    private boolean checksum;
+    private boolean moveDetection;
+    private boolean deduplication;
+    private boolean xmlExport;
+    private boolean mappedRegistry;
+    private boolean importRegistry;
+    private long debounceMillis;
 
     // CONSTRUCTEUR
 
     public SynchronizationFacade(FileSystem fileSystem) {
         this.fileSystem = fileSystem;
-        this.registry = Registry.getInstance();
-        this.fileComponentCreator = new FileCreator();
-        this.directoryCreator = new DirectoryCreator();
+        this.treeBuilder = new FileTreeBuilder(fileSystem);
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.executor = new SyncExecutor(workers);
+        this.debounceMillis = 500;
     }
 
     // REQUÊTE
@@ -63,70 +106,497 @@ public class SynchronizationFacade {
 
     // COMMANDES
 
+    /**
+     * Défini le nombre maximal de répertoires parcourus simultanément lors de
+     * la construction de l'arborescence source
+     * @param parallelism niveau de parallélisme, strictement positif
+     */
+    public void setParallelism(int parallelism) {
+        this.treeBuilder = new FileTreeBuilder(fileSystem, parallelism);
+    }
+
+    /**
+     * Défini le nombre maximal de copies de fichiers exécutées simultanément
+     * lors de l'exécution du plan de synchronisation
+     * @param workers nombre de copies simultanées, strictement positif
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+        this.executor = new SyncExecutor(workers, virtualThreads);
+    }
+
+    /**
+     * Active ou désactive l'exécution de chaque copie dans un thread
+     * virtuel. La concurrence est alors bornée par périphérique de
+     * stockage, par défaut à {@value #DEFAULT_DEVICE_LIMIT} opérations
+     * simultanées.
+     * @param virtualThreads {@code true} pour utiliser les threads virtuels
+     * @see #setDeviceLimit(Path, int) limite d'un périphérique
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        this.executor = new SyncExecutor(workers, virtualThreads);
+        if (virtualThreads) {
+            throttle();
+        }
+    }
+
+    /**
+     * Défini le nombre maximal d'opérations simultanées sur le périphérique
+     * de stockage contenant le chemin donné, par exemple 64 pour un disque
+     * NVMe et 2 pour un disque dur USB
+     * @param path chemin existant sur le périphérique
+     * @param limit nombre maximal d'opérations simultanées
+     * @throws IOException exception levée si le périphérique est introuvable
+     */
+    public void setDeviceLimit(Path path, int limit) throws IOException {
+        throttle();
+        throttledFileSystem.setLimit(path, limit);
+    }
+
+    /**
+     * Active ou désactive le parcours à la demande de l'arborescence source :
+     * les répertoires sont listés au moment où le visiteur les atteint, la
+     * synchronisation commence sans attendre la fin du parcours et la
+     * mémoire utilisée dépend de la profondeur et de la largeur de
+     * l'arborescence plutôt que de son nombre de fichiers
+     * @param streaming {@code true} pour parcourir l'arborescence à la demande
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Active ou désactive la représentation compacte de l'arborescence
+     * source, qui réduit la mémoire occupée et les allocations par fichier
+     * lors des parcours de grandes arborescences
+     * @param compact {@code true} pour construire une arborescence compacte
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Active ou désactive l'élagage des répertoires inchangés. Par défaut,
+     * toute l'arborescence est parcourue. Avec l'élagage, un sous-répertoire
+     * dont les dates de modification source et destination sont identiques à
+     * celles enregistrées lors de la dernière synchronisation n'est pas
+     * parcouru : aucune entrée n'y a été ajoutée, supprimée ou renommée. Une
+     * modification du contenu d'un fichier existant ne change cependant pas
+     * la date de son répertoire et n'est donc pas synchronisée : l'élagage
+     * ne convient qu'aux arborescences dont les fichiers sont remplacés
+     * plutôt que modifiés sur place.
+     * @param prune {@code true} pour élaguer les répertoires inchangés
+     */
+    public void setPrune(boolean prune) {
+        this.prune = prune;
+    }
+
+    /**
+     * Active ou désactive le mode empreinte : un fichier dont la date a
+     * changé n'est copié que si son contenu diffère, les empreintes étant
+     * conservées dans le registre et recalculées uniquement pour les
+     * fichiers dont la taille ou la date a changé
+     * @param checksum {@code true} pour comparer le contenu des fichiers
+     */
+    public void setChecksum(boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Active ou désactive la détection des déplacements : un fichier déplacé
+     * ou renommé dans la source est déplacé dans la destination, et un
+     * nouveau fichier volumineux identique à un fichier existant y est lié,
+     * au lieu d'être copiés. Les fichiers sont appariés par taille et date,
+     * et par empreinte en mode empreinte.
+     * @param moveDetection {@code true} pour détecter les déplacements
+     */
+    public void setMoveDetection(boolean moveDetection) {
+        this.moveDetection = moveDetection;
+    }
+
+    /**
+     * Active ou désactive la déduplication de la destination : l'empreinte
+     * de chaque fichier copié vers la destination est calculée et, si un
+     * fichier de même contenu y existe déjà, un lien physique vers ce fichier
+     * remplace la copie. Les empreintes des fichiers de la destination sont
+     * conservées dans le registre.
+     * @param deduplication {@code true} pour dédupliquer la destination
+     */
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    /**
+     * Active ou désactive la mise à jour du fichier
+     * {@code <profil>.registry.xml} à chaque sauvegarde du registre, pour
+     * les outils qui lisent ce format
+     * @param xmlExport {@code true} pour maintenir le fichier à jour
+     */
+    public void setRegistryXml(boolean xmlExport) {
+        this.xmlExport = xmlExport;
+    }
+
+    /**
+     * Conserve les dates de synchronisation du registre dans un index
+     * projeté en mémoire, ouvert sans relecture lors des exécutions
+     * suivantes
+     */
+    public void useMappedRegistry() {
+        this.mappedRegistry = true;
+    }
+
+    /**
+     * Importe dans le registre du profil synchronisé le registre partagé
+     * des versions précédentes, s'il n'a pas déjà été importé
+     */
+    public void importSharedRegistry() {
+        this.importRegistry = true;
+    }
+
+    /**
+     * Défini le délai sans nouvel évènement après lequel les changements
+     * observés en mode surveillance sont synchronisés
+     * @param debounceMillis délai en millisecondes
+     */
+    public void setDebounce(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+
     /**
      * Lance la synchronisation entre les répertoires source et destination en
-     * fonction du profil donné en parcourant et appliquant les
-     * modifications et les règles de synchronisation nécessaires dans le
-     * répertoire cible
+     * fonction du profil donné en deux phases : le parcours des arborescences
+     * planifie les modifications nécessaires sans rien modifier, puis le plan
+     * est exécuté, les copies de fichiers en parallèle. En mode de parcours à
+     * la demande, le plan est exécuté par parties au fil du parcours
      * @param profile profil à utiliser pour la synchronisation
      */
     public void synchronize(Profile profile) throws IOException {
+        openRegistry(profile);
+        registerDevices(profile);
         Path source = profile.getSourceDirectory();
         Path destination = profile.getDestinationDirectory();
-        FileComponent fileComponent = buildFileTree(source);
-        SyncVisitor syncVisitor = new SyncVisitor(
-                source, destination, registry, fileSystem);
+        usePruneFilter(source, destination, false);
+        FileComponent fileComponent = buildSourceTree(source);
+        SyncVisitor syncVisitor = new SyncVisitor(source, destination,
+                registry, fileSystem, buildDestinationIndex(source, destination));
+        syncVisitor.setChecksum(checksum);
+        syncVisitor.setMoveDetection(moveDetection);
+        syncVisitor.setDeduplication(deduplication);
+        if (streaming) {
+            syncVisitor.executeEvery(STREAMING_PLAN_SIZE, this::execute);
+        }
         fileComponent.accept(syncVisitor);
+        execute(syncVisitor.takePlan());
         registry.saveToFile();
     }
 
+    /**
+     * Sauvegarde la source du profil dans un nouveau répertoire daté de la
+     * destination. Les fichiers inchangés depuis la sauvegarde précédente
+     * sont liés physiquement à ses fichiers, seuls les fichiers modifiés sont
+     * copiés. La sauvegarde est construite dans un répertoire caché, renommé
+     * une fois terminée : une sauvegarde interrompue n'est jamais prise pour
+     * base de la suivante.
+     * @param profile profil dont la destination contient les sauvegardes
+     * @throws IOException exception levée si le registre ne peut être
+     * enregistré
+     * @see SnapshotVisitor planification de la sauvegarde
+     */
+    public void snapshot(Profile profile) throws IOException {
+        openRegistry(profile);
+        registerDevices(profile);
+        Path source = profile.getSourceDirectory();
+        Path destination = profile.getDestinationDirectory();
+        fileSystem.createDirectory(destination);
+        Path previous = latestSnapshot(destination);
+        String name = SNAPSHOT_FORMAT.format(LocalDateTime.now());
+        Path snapshot = destination.resolve(name);
+        Path partial = destination.resolve("." + name + WriteCommitter.TEMPORARY_SUFFIX);
+        // chaque fichier doit figurer dans la sauvegarde : aucun élagage
+        treeBuilder.setPruneFilter(PruneFilter.NONE);
+        SnapshotVisitor snapshotVisitor = new SnapshotVisitor(
+                source, partial, previous, registry, fileSystem);
+        buildSourceTree(source).accept(snapshotVisitor);
+        execute(snapshotVisitor.takePlan());
+        if (!fileSystem.moveFile(partial, snapshot)) {
+            System.out.println("error with the snapshot " + partial);
+            return;
+        }
+        registry.saveToFile();
+        System.out.println("snapshot " + snapshot
+                + (previous != null ? " linked to " + previous.getFileName() : ""));
+    }
+
+    /**
+     * Synchronise le profil puis surveille les répertoires source et
+     * destination : seuls les chemins modifiés sont ensuite resynchronisés,
+     * une analyse complète n'étant relancée qu'en cas de perte d'évènements.
+     * Ne se termine que par une interruption.
+     * @param profile profil à utiliser pour la synchronisation
+     * @throws IOException exception levée si la surveillance est impossible
+     * @throws InterruptedException exception levée si la surveillance est
+     * interrompue
+     */
+    public void watch(Profile profile) throws IOException, InterruptedException {
+        openRegistry(profile);
+        registerDevices(profile);
+        Path source = profile.getSourceDirectory();
+        Path destination = profile.getDestinationDirectory();
+        usePruneFilter(source, destination, false);
+        try (DirectoryWatcher watcher = new DirectoryWatcher(source, destination)) {
+            // les changements ne concernent que quelques répertoires : la
+            // destination est lue à la demande plutôt que parcourue entièrement
+            SyncVisitor syncVisitor = new SyncVisitor(source, destination,
+                    registry, fileSystem,
+                    new DestinationIndex(fileSystem, destination));
+            syncVisitor.setChecksum(checksum);
+            syncVisitor.setMoveDetection(moveDetection);
+            syncVisitor.setDeduplication(deduplication);
+            buildSourceTree(source).accept(syncVisitor);
+            SyncPlan initial = syncVisitor.takePlan();
+            execute(initial);
+            registry.saveToFile();
+            watcher.ignoreWritten(writtenBy(initial));
+            while (true) {
+                System.out.println("watching for changes...");
+                ChangeJournal journal = watcher.awaitChanges(debounceMillis);
+                if (journal.isOverflowed()) {
+                    System.out.println("change events lost, full rescan");
+                    watcher.registerAll();
+                    buildSourceTree(source).accept(syncVisitor);
+                } else {
+                    synchronizeChanges(source, journal, syncVisitor);
+                }
+                SyncPlan plan = syncVisitor.takePlan();
+                execute(plan);
+                registry.saveToFile();
+                watcher.ignoreWritten(writtenBy(plan));
+            }
+        }
+    }
+
     // OUTILS
 
     /**
-     * Parcourt le répertoire donné et crée récursivement une structure
-     * composite représentant tous les fichiers et répertoires du
-     * dossier source.
+     * Ouvre le registre d'un profil, en attendant que les autres processus
+     * qui l'utilisent se terminent, et lui applique les options du registre
+     * @param profile profil dont le registre est ouvert
+     * @throws IOException exception levée si l'index projeté en mémoire ne
+     * peut être créé ou si le registre partagé ne peut être importé
+     */
+    private void openRegistry(Profile profile) throws IOException {
+        registry = Registry.getInstance(profile.getProfileName());
+        registry.setXmlExport(xmlExport);
+        if (mappedRegistry) {
+            registry.useMappedIndex();
+        }
+        if (importRegistry) {
+            importRegistry = false;
+            if (!registry.importSharedRegistry()) {
+                System.out.println("no shared registry to import");
+            }
+        }
+    }
+
+    /**
+     * Enregistre les racines du profil auprès du système de fichiers limité
+     * par périphérique, qui détermine ainsi une seule fois leur périphérique
+     * @param profile profil synchronisé
+     */
+    private void registerDevices(Profile profile) {
+        if (throttledFileSystem != null) {
+            throttledFileSystem.addRoot(profile.getSourceDirectory());
+            throttledFileSystem.addRoot(profile.getDestinationDirectory());
+        }
+    }
+
+    /**
+     * Décore le système de fichiers pour limiter les opérations simultanées
+     * par périphérique, parcours des arborescences compris
+     */
+    private void throttle() {
+        if (throttledFileSystem == null) {
+            throttledFileSystem = new ThrottledFileSystem(
+                    fileSystem, DEFAULT_DEVICE_LIMIT);
+            fileSystem = throttledFileSystem;
+            treeBuilder = new FileTreeBuilder(
+                    fileSystem, treeBuilder.getParallelism());
+        }
+    }
+
+    /**
+     * Retourne la plus récente sauvegarde terminée d'un répertoire de
+     * sauvegardes
+     * @param destination répertoire des sauvegardes
+     * @return chemin de la sauvegarde, {@code null} s'il n'y en a aucune
+     */
+    private Path latestSnapshot(Path destination) {
+        Path latest = null;
+        for (Path path : fileSystem.listFiles(destination)) {
+            String name = path.getFileName().toString();
+            if (isSnapshotName(name) && fileSystem.isDirectory(path)
+                    && (latest == null
+                            || name.compareTo(latest.getFileName().toString()) > 0)) {
+                latest = path;
+            }
+        }
+        return latest;
+    }
+
+    private static boolean isSnapshotName(String name) {
+        try {
+            SNAPSHOT_FORMAT.parse(name);
+            return true;
+        } catch (DateTimeParseException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Affiche le résumé d'un plan de synchronisation puis l'exécute
+     * @param plan plan de synchronisation
+     */
+    private void execute(SyncPlan plan) {
+        System.out.println("planned operations: " + plan.getOperations().size()
+                + ", bytes to transfer: " + plan.getTotalSize());
+        executor.execute(plan, fileSystem::commit);
+    }
+
+    /**
+     * Construit l'arborescence source selon le mode de parcours choisi : à
+     * la demande, compacte ou entièrement en mémoire
+     * @param source chemin du répertoire source
+     * @return racine de l'arborescence source
+     */
+    private FileComponent buildSourceTree(Path source) {
+        if (streaming) {
+            return treeBuilder.buildLazy(source);
+        }
+        if (compact) {
+            return treeBuilder.buildCompact(source);
+        }
+        return treeBuilder.build(source);
+    }
+
+    /**
+     * Construit l'index de la destination : parcours complet et parallèle de
+     * l'arborescence de destination, ou lecture à la demande de chaque
+     * répertoire en mode de parcours à la demande
+     * @param source chemin du répertoire source
+     * @param destination chemin du répertoire destination
+     * @return index de la destination
+     */
+    private DestinationIndex buildDestinationIndex(Path source, Path destination) {
+        if (streaming) {
+            return new DestinationIndex(fileSystem, destination);
+        }
+        usePruneFilter(source, destination, true);
+        DestinationIndex destinationIndex = new DestinationIndex(
+                fileSystem, treeBuilder.build(destination));
+        usePruneFilter(source, destination, false);
+        return destinationIndex;
+    }
+
+    /**
+     * Défini le filtre d'élagage de la construction d'une arborescence pour
+     * un couple de répertoires, si l'élagage est activé. Un sous-répertoire
+     * est élagué si sa dernière synchronisation l'a rendu identique des deux
+     * côtés, avec tous ses sous-répertoires enregistrés, et si lui et son
+     * équivalent de l'autre côté ont conservé les dates de modification
+     * enregistrées alors. Ses sous-répertoires sont ceux connus du registre.
      * @param source chemin du répertoire source
-     * @return structure composite représentant l'arborescence des fichiers du
-     * répertoire source
-     */
-    private FileComponent buildFileTree(Path source) {
-        Date lastModified = fileSystem.getFileLastModified(source);
-        FileComponent rootComponent;
-
-        if (fileSystem.isDirectory(source)) {
-            rootComponent = directoryCreator.factoryMethod(source, lastModified);
-            buildFileTreeRec((DirectoryComposite) rootComponent, source);
-        } else {
-            rootComponent = fileComponentCreator.factoryMethod(source, lastModified);
-        }
-        return rootComponent;
-    }
-
-    /**
-     * Construit récursivement l'arborescence des fichiers sous forme de
-     * structure composite à partir d'un répertoire donné. Parcourt les
-     * sous-répertoires et ajoute chaque fichier et répertoire à la
-     * structure composite.
-     * @param directoryParentComposite composant parent auquel seront ajoutés les
-     * fichiers et sous-répertoires
-     * @param curPath chemin actuel du répertoire ou fichier à ajouter
-     */
-    private void buildFileTreeRec(
-            DirectoryComposite directoryParentComposite, Path curPath) {
-        List<Path> data = fileSystem.listFiles(curPath);
-        for (Path path : data) {
-            if (Files.isDirectory(path)) {
-                DirectoryComposite dirComposite =
-                        (DirectoryComposite) directoryCreator.factoryMethod(
-                                path, fileSystem.getFileLastModified(path));
-                buildFileTreeRec(dirComposite, path);
-            } else {
-                FileComponent fileComponent =
-                        fileComponentCreator.factoryMethod(
-                                path, fileSystem.getFileLastModified(path));
-                directoryParentComposite.add(fileComponent);
+     * @param destination chemin du répertoire destination
+     * @param destinationSide {@code true} si l'arborescence construite est
+     * celle de la destination
+     */
+    private void usePruneFilter(
+            Path source, Path destination, boolean destinationSide) {
+        if (!prune) {
+            treeBuilder.setPruneFilter(PruneFilter.NONE);
+            return;
+        }
+        Path root = destinationSide ? destination : source;
+        Path other = destinationSide ? source : destination;
+        treeBuilder.setPruneFilter(new PruneFilter() {
+            @Override
+            public boolean test(Path path, BasicFileAttributes attributes) {
+                Path relative = root.relativize(path);
+                DirectoryState state = registry.getDirectoryState(relative.toString());
+                if (state == null || state.getEntriesDigest() == null) {
+                    return false;
+                }
+                long modified = destinationSide
+                        ? state.getDestinationModified()
+                        : state.getSourceModified();
+                long otherModified = destinationSide
+                        ? state.getSourceModified()
+                        : state.getDestinationModified();
+                if (attributes.lastModifiedTime().toMillis() != modified) {
+                    return false;
+                }
+                BasicFileAttributes otherAttributes =
+                        fileSystem.getAttributes(other.resolve(relative));
+                return otherAttributes != null
+                        && otherAttributes.lastModifiedTime().toMillis() == otherModified;
+            }
+
+            @Override
+            public List<Path> subdirectories(Path directory) {
+                List<Path> subdirectories = new ArrayList<>();
+                for (String name : registry.getSubdirectories(
+                        root.relativize(directory).toString())) {
+                    subdirectories.add(directory.resolve(name));
+                }
+                return subdirectories;
+            }
+        });
+    }
+
+    /**
+     * Retourne les chemins écrits par un plan exécuté, dont les évènements
+     * de surveillance ne sont pas des changements à synchroniser. Les
+     * opérations qui ne modifient que le registre sont écartées.
+     * @param plan plan exécuté
+     * @return chemins cibles des opérations du plan
+     */
+    private static List<Path> writtenBy(SyncPlan plan) {
+        List<Path> written = new ArrayList<>();
+        for (SyncOperation operation : plan.getOperations()) {
+            if (operation.getKind() != SyncOperation.Kind.STATE) {
+                written.add(operation.getTarget());
             }
         }
+        return written;
+    }
+
+    /**
+     * Resynchronise les chemins modifiés du journal. Un répertoire présent
+     * dans la source est resynchronisé entièrement ; pour un fichier, ou un
+     * chemin absent de la source, seul le contenu direct du plus proche
+     * répertoire source existant est resynchronisé, ce qui couvre aussi les
+     * fichiers ajoutés dans la destination.
+     * @param source chemin du répertoire source
+     * @param journal chemins modifiés
+     * @param syncVisitor visiteur de synchronisation
+     */
+    private void synchronizeChanges(
+            Path source, ChangeJournal journal, SyncVisitor syncVisitor) {
+        Set<Path> directories = new TreeSet<>();
+        for (Path relative : journal.getPaths()) {
+            Path path = source.resolve(relative);
+            if (fileSystem.isDirectory(path)) {
+                buildSourceTree(path).accept(syncVisitor);
+                continue;
+            }
+            Path directory = path.getParent();
+            while (!directory.equals(source) && !fileSystem.isDirectory(directory)) {
+                directory = directory.getParent();
+            }
+            directories.add(directory);
+        }
+        for (Path directory : directories) {
+            treeBuilder.buildShallow(directory).accept(syncVisitor);
+        }
     }
 }
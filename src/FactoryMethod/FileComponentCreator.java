@@ -3,6 +3,7 @@ package FactoryMethod;
 import Composite.FileComponent;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 
 /**
@@ -21,4 +22,17 @@ public abstract class FileComponentCreator {
      * @return composant de fichier
      */
     public abstract FileComponent factoryMethod(Path path, Date lastModified);
+
+    /**
+     * Méthode de fabrique à partir des attributs déjà lus du fichier ou
+     * répertoire, sans nouvel accès au système de fichiers
+     * @param path chemin du fichier ou répertoire
+     * @param attributes attributs du fichier ou répertoire
+     * @return composant de fichier
+     */
+    public FileComponent factoryMethod(
+            Path path, BasicFileAttributes attributes) {
+        return factoryMethod(
+                path, new Date(attributes.lastModifiedTime().toMillis()));
+    }
 }
@@ -6,6 +6,7 @@ import Composite.FileLeaf;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 
 /**
@@ -33,4 +34,21 @@ public class FileCreator extends FileComponentCreator {
             throw new RuntimeException("Error creating file :" + path, e);
         }
     }
+
+    /**
+     * Crée un composant à partir des attributs déjà lus : un répertoire
+     * (composite) ou un fichier simple (feuille) portant sa taille
+     * @param path chemin du fichier ou répertoire
+     * @param attributes attributs du fichier ou répertoire
+     * @return un {@code DirectoryComposite} ou un {@code FileLeaf}
+     */
+    @Override
+    public FileComponent factoryMethod(
+            Path path, BasicFileAttributes attributes) {
+        Date lastModified = new Date(attributes.lastModifiedTime().toMillis());
+        if (attributes.isDirectory()) {
+            return new DirectoryComposite(path, lastModified);
+        }
+        return new FileLeaf(path, lastModified, attributes.size());
+    }
 }
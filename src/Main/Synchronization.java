@@ -3,6 +3,10 @@ package Main;
 import Adapter.FileSystem;
 import Adapter.LocalFileSystemAdapter;
 import Facade.SynchronizationFacade;
+import Strategy.ChannelCopyStrategy;
+import Strategy.ChunkedCopyStrategy;
+import Strategy.DeltaCopyStrategy;
+import Strategy.Durability;
 import Builder.Profile;
 
 import java.io.IOException;
@@ -13,11 +17,66 @@ import java.nio.file.Path;
  * Programme pour démarrer la synchronisation des fichiers en utilisant un
  * profil spécifique. Ce programme charge un profil à partir d'un fichier de
  * sauvegarde et utilise un système de fichiers local pour effectuer la
- * synchronisation entre les répertoires source et destination.
+ * synchronisation entre les répertoires source et destination. Chaque
+ * profil a son propre registre, à côté de son fichier de sauvegarde : des
+ * profils différents peuvent être synchronisés en parallèle par plusieurs
+ * processus, un même profil l'est par un seul processus à la fois.
  *
  * <p>Exécution :</p>
  * <pre>
- *     java Main.SyncStat nom-du-profil
+ *     java Main.Synchronization nom-du-profil [options]
+ * </pre>
+ * <p>Options :</p>
+ * <pre>
+ *     --parallelism=N   nombre de répertoires parcourus simultanément
+ *     --workers=N       nombre de fichiers copiés simultanément
+ *     --virtual-threads un thread virtuel par copie, concurrence bornée par
+ *                       périphérique de stockage
+ *     --device-limit=CHEMIN:N
+ *                       nombre d'opérations simultanées sur le périphérique
+ *                       contenant CHEMIN
+ *     --chunk-threshold=OCTETS
+ *                       taille à partir de laquelle un fichier est copié par
+ *                       segments parallèles
+ *     --chunk-streams=N nombre de segments d'un fichier copiés simultanément
+ *     --delta[=OCTETS]  copie différentielle des fichiers modifiés d'au moins
+ *                       OCTETS octets, 64 Mio par défaut
+ *     --delta-inplace   copie différentielle réécrivant en place les seules
+ *                       zones modifiées, non atomique
+ *     --resumable       reprise des copies par segments interrompues
+ *     --verify-chunks   vérification des segments repris par somme de
+ *                       contrôle
+ *     --durability=none|batched|per-file
+ *                       écriture forcée des copies sur le support : jamais,
+ *                       par lots ou copie par copie
+ *     --stream          parcours de la source à la demande, sans la charger
+ *                       entièrement en mémoire
+ *     --compact         arborescence source compacte en mémoire
+ *     --prune           répertoires inchangés depuis la dernière
+ *                       synchronisation ignorés, d'après leurs dates : les
+ *                       modifications sur place de leurs fichiers ne sont
+ *                       pas synchronisées
+ *     --paranoid        parcours complet, sans ignorer les répertoires
+ *                       inchangés (par défaut, annule --prune)
+ *     --checksum        copie des seuls fichiers dont le contenu diffère,
+ *                       selon leur empreinte
+ *     --detect-moves    déplacement dans la destination des fichiers déplacés
+ *                       dans la source plutôt que leur copie
+ *     --dedup           lien physique vers un fichier de même contenu déjà
+ *                       présent en destination plutôt qu'une copie
+ *     --registry-xml    mise à jour de nom-du-profil.registry.xml à chaque
+ *                       sauvegarde du registre, pour les outils qui le lisent
+ *     --mapped-registry dates du registre dans un index projeté en mémoire,
+ *                       conservé pour les exécutions suivantes
+ *     --import-registry import dans le registre du profil du registre partagé
+ *                       des versions précédentes, renommé ensuite
+ *     --snapshot        sauvegarde de la source dans un nouveau répertoire
+ *                       daté de la destination, les fichiers inchangés étant
+ *                       liés à la sauvegarde précédente
+ *     --watch           surveillance continue des répertoires après la
+ *                       synchronisation initiale, incompatible avec
+ *                       --snapshot
+ *     --debounce=MS     délai de regroupement des changements surveillés
  * </pre>
  *
  * @see FileSystem interface pour les opérations sur le système de fichiers
@@ -27,9 +86,11 @@ import java.nio.file.Path;
  * @see Profile profil de synchronisation
  */
 public class Synchronization {
-    public static void main(String[] args) throws IOException, ClassNotFoundException {
-        if (args.length != 1) {
-            System.out.println("Usage: java Min.Synchronization nom-du-profil");
+    public static void main(String[] args)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java Main.Synchronization nom-du-profil [options]");
+            return;
         }
 
         String profileName = args[0];
@@ -47,15 +108,115 @@ public class Synchronization {
             return;
         }
 
-        FileSystem fileSystem = new LocalFileSystemAdapter();
+        ChunkedCopyStrategy copyStrategy =
+                new ChunkedCopyStrategy(new ChannelCopyStrategy());
+        LocalFileSystemAdapter fileSystem = new LocalFileSystemAdapter(copyStrategy);
         SynchronizationFacade synchronizationFacade = new SynchronizationFacade(fileSystem);
+        DeltaCopyStrategy deltaStrategy = null;
+        boolean watch = false;
+        boolean snapshot = false;
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (option.startsWith("--parallelism=")) {
+                synchronizationFacade.setParallelism(Integer.parseInt(
+                        option.substring("--parallelism=".length())));
+            } else if (option.startsWith("--workers=")) {
+                synchronizationFacade.setWorkers(Integer.parseInt(
+                        option.substring("--workers=".length())));
+            } else if (option.equals("--virtual-threads")) {
+                synchronizationFacade.setVirtualThreads(true);
+            } else if (option.startsWith("--device-limit=")) {
+                String limit = option.substring("--device-limit=".length());
+                int separator = limit.lastIndexOf(':');
+                if (separator < 0) {
+                    System.err.println("Invalid device limit: " + limit);
+                    return;
+                }
+                synchronizationFacade.setDeviceLimit(
+                        Path.of(limit.substring(0, separator)),
+                        Integer.parseInt(limit.substring(separator + 1)));
+            } else if (option.startsWith("--chunk-threshold=")) {
+                copyStrategy.setThreshold(Long.parseLong(
+                        option.substring("--chunk-threshold=".length())));
+            } else if (option.startsWith("--chunk-streams=")) {
+                copyStrategy.setStreams(Integer.parseInt(
+                        option.substring("--chunk-streams=".length())));
+            } else if (option.equals("--delta") || option.startsWith("--delta=")
+                    || option.equals("--delta-inplace")) {
+                if (deltaStrategy == null) {
+                    deltaStrategy = new DeltaCopyStrategy(copyStrategy);
+                    fileSystem.setCopyStrategy(deltaStrategy);
+                }
+                if (option.startsWith("--delta=")) {
+                    deltaStrategy.setThreshold(Long.parseLong(
+                            option.substring("--delta=".length())));
+                } else if (option.equals("--delta-inplace")) {
+                    deltaStrategy.setInPlace(true);
+                }
+            } else if (option.equals("--resumable")) {
+                copyStrategy.setResumable(true);
+            } else if (option.equals("--verify-chunks")) {
+                copyStrategy.setResumable(true);
+                copyStrategy.setVerifyChunks(true);
+            } else if (option.startsWith("--durability=")) {
+                String durability = option.substring("--durability=".length());
+                try {
+                    fileSystem.setDurability(Durability.valueOf(
+                            durability.toUpperCase().replace('-', '_')));
+                } catch (IllegalArgumentException exception) {
+                    System.out.println("error with the durability " + durability
+                            + ": expected none, batched or per-file");
+                    return;
+                }
+            } else if (option.equals("--stream")) {
+                synchronizationFacade.setStreaming(true);
+            } else if (option.equals("--compact")) {
+                synchronizationFacade.setCompact(true);
+            } else if (option.equals("--prune")) {
+                synchronizationFacade.setPrune(true);
+            } else if (option.equals("--paranoid")) {
+                synchronizationFacade.setPrune(false);
+            } else if (option.equals("--checksum")) {
+                synchronizationFacade.setChecksum(true);
+            } else if (option.equals("--detect-moves")) {
+                synchronizationFacade.setMoveDetection(true);
+            } else if (option.equals("--dedup")) {
+                synchronizationFacade.setDeduplication(true);
+            } else if (option.equals("--registry-xml")) {
+                synchronizationFacade.setRegistryXml(true);
+            } else if (option.equals("--mapped-registry")) {
+                synchronizationFacade.useMappedRegistry();
+            } else if (option.equals("--import-registry")) {
+                synchronizationFacade.importSharedRegistry();
+            } else if (option.equals("--snapshot")) {
+                snapshot = true;
+            } else if (option.equals("--watch")) {
+                watch = true;
+            } else if (option.startsWith("--debounce=")) {
+                synchronizationFacade.setDebounce(Long.parseLong(
+                        option.substring("--debounce=".length())));
+            } else {
+                System.err.println("Unknown option: " + option);
+                return;
+            }
+        }
+        if (snapshot && watch) {
+            System.err.println("--snapshot cannot be combined with --watch");
+            return;
+        }
 
         System.out.println("Synchronization started for " + profileName);
         System.out.println("Source: " + profile.getSourceDirectory());
         System.out.println("Destination: " + profile.getDestinationDirectory());
         System.out.println("========================================");
 
-        synchronizationFacade.synchronize(profile);
+        if (snapshot) {
+            synchronizationFacade.snapshot(profile);
+        } else if (watch) {
+            synchronizationFacade.watch(profile);
+        } else {
+            synchronizationFacade.synchronize(profile);
+        }
 
         System.out.println("========================================");
         System.out.println("Synchronization finished");
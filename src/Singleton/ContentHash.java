@@ -0,0 +1,89 @@
+package Singleton;
+
+/**
+ * Empreinte du contenu d'un fichier lors de sa dernière synchronisation,
+ * avec la taille et les dates de modification source et destination qui lui
+ * servent de clé de cache : tant qu'un fichier conserve sa taille et sa
+ * date, son empreinte n'est pas recalculée.
+ *
+ * @see Registry registre de synchronisation
+ */
+public class ContentHash {
+    // ATTRIBUTS
+
+    private final long size;
+    private final long sourceModified;
+    private final long destinationModified;
+    private final String hash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param size taille du fichier
+     * @param sourceModified date de modification du fichier source, en
+     * millisecondes
+     * @param destinationModified date de modification du fichier destination,
+     * en millisecondes
+     * @param hash empreinte du contenu, en hexadécimal
+     */
+    public ContentHash(long size, long sourceModified,
+            long destinationModified, String hash) {
+        this.size = size;
+        this.sourceModified = sourceModified;
+        this.destinationModified = destinationModified;
+        this.hash = hash;
+    }
+
+    // REQUÊTES
+
+    /**
+     * @return taille du fichier
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return date de modification du fichier source, en millisecondes
+     */
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    /**
+     * @return date de modification du fichier destination, en millisecondes
+     */
+    public long getDestinationModified() {
+        return destinationModified;
+    }
+
+    /**
+     * @return empreinte du contenu, en hexadécimal
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Indique si l'empreinte est toujours valable pour le fichier source
+     * @param size taille actuelle du fichier source
+     * @param modified date de modification actuelle, en millisecondes
+     * @return {@code true} si le fichier source n'a pas changé de taille ni
+     * de date
+     */
+    public boolean matchesSource(long size, long modified) {
+        return this.size == size && sourceModified == modified;
+    }
+
+    /**
+     * Indique si l'empreinte est toujours valable pour le fichier destination
+     * @param size taille actuelle du fichier destination
+     * @param modified date de modification actuelle, en millisecondes
+     * @return {@code true} si le fichier destination n'a pas changé de taille
+     * ni de date
+     */
+    public boolean matchesDestination(long size, long modified) {
+        return this.size == size && destinationModified == modified;
+    }
+}
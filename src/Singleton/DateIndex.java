@@ -0,0 +1,125 @@
+package Singleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Index des dates de synchronisation des fichiers du registre, par chemin
+ * relatif. Les dates sont des instants en millisecondes. Les requêtes sur
+ * une arborescence parcourent par défaut tout l'index.
+ *
+ * @see PathTrie index en mémoire, en arbre des chemins
+ * @see MappedDateIndex index projeté en mémoire depuis un fichier
+ */
+interface DateIndex extends AutoCloseable {
+    /**
+     * Date retournée pour un fichier absent de l'index
+     */
+    long ABSENT = Long.MIN_VALUE;
+
+    // REQUÊTES
+
+    /**
+     * Retourne la date d'un fichier
+     * @param path chemin relatif du fichier
+     * @return date du fichier, {@link #ABSENT} s'il n'est pas indexé
+     */
+    long get(String path);
+
+    /**
+     * Retourne le nombre de fichiers indexés
+     * @return nombre de fichiers
+     */
+    long size();
+
+    /**
+     * Parcourt les fichiers indexés, dans un ordre quelconque
+     * @param action action appelée avec le chemin et la date de chaque
+     * fichier
+     */
+    void forEach(ObjLongConsumer<String> action);
+
+    /**
+     * Parcourt les fichiers indexés sous un répertoire, à toute profondeur,
+     * dans un ordre quelconque
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @param action action appelée avec le chemin et la date de chaque
+     * fichier
+     */
+    default void forEachUnder(String directory, ObjLongConsumer<String> action) {
+        String prefix = directory.isEmpty() ? "" : directory + File.separatorChar;
+        forEach((path, date) -> {
+            if (path.startsWith(prefix)) {
+                action.accept(path, date);
+            }
+        });
+    }
+
+    /**
+     * Retourne la date la plus récente des fichiers indexés sous un
+     * répertoire, à toute profondeur
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return date la plus récente, {@link #ABSENT} si aucun fichier n'est
+     * indexé sous le répertoire
+     */
+    default long maxUnder(String directory) {
+        long[] max = {ABSENT};
+        forEachUnder(directory, (path, date) -> max[0] = Math.max(max[0], date));
+        return max[0];
+    }
+
+    /**
+     * Copie l'index
+     * @return dates indexées par chemin relatif
+     */
+    Map<String, Long> toMap();
+
+    /**
+     * Indique si l'index est conservé par lui-même d'une exécution à
+     * l'autre, sans passer par le journal du registre
+     * @return {@code true} si l'index est persistant
+     */
+    boolean isPersistent();
+
+    // COMMANDES
+
+    /**
+     * Enregistre la date d'un fichier
+     * @param path chemin relatif du fichier
+     * @param date date du fichier
+     */
+    void put(String path, long date);
+
+    /**
+     * Retire un fichier de l'index
+     * @param path chemin relatif du fichier
+     * @return {@code true} si le fichier était indexé
+     */
+    boolean remove(String path);
+
+    /**
+     * Retire de l'index tous les fichiers situés sous un répertoire, à toute
+     * profondeur
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return chemins relatifs des fichiers retirés
+     */
+    default List<String> removeUnder(String directory) {
+        List<String> paths = new ArrayList<>();
+        forEachUnder(directory, (path, date) -> paths.add(path));
+        paths.forEach(this::remove);
+        return paths;
+    }
+
+    /**
+     * Écrit durablement l'index s'il est persistant
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    void force() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,118 @@
+package Singleton;
+
+/**
+ * État d'un répertoire à la fin de sa dernière synchronisation, côté source
+ * et côté destination : date de dernière modification et nombre d'entrées.
+ * La date de modification d'un répertoire change dès qu'une entrée y est
+ * ajoutée, supprimée ou renommée ; si elle est identique des deux côtés, le
+ * contenu direct du répertoire n'a pas changé de structure depuis.
+ * L'état conserve aussi, lorsque les deux côtés sont identiques, l'empreinte
+ * des entrées directes du répertoire (noms, tailles, dates et empreintes de
+ * ses fichiers, noms de ses sous-répertoires) et l'empreinte de Merkle de
+ * l'arborescence, qui y ajoute les empreintes de ses sous-répertoires : deux
+ * arborescences de même empreinte sont identiques. L'empreinte des entrées
+ * directes n'est enregistrée que si tous les sous-répertoires ont eux-mêmes
+ * un état : le répertoire peut alors être parcouru sans être listé.
+ *
+ * @see Registry registre de synchronisation
+ */
+public class DirectoryState {
+    // ATTRIBUTS
+
+    private final long sourceModified;
+    private final int sourceChildren;
+    private final long destinationModified;
+    private final int destinationChildren;
+    private final String entriesDigest;
+    private final String digest;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur d'un état sans empreinte
+     * @param sourceModified date de modification du répertoire source, en
+     * millisecondes
+     * @param sourceChildren nombre d'entrées du répertoire source
+     * @param destinationModified date de modification du répertoire
+     * destination, en millisecondes
+     * @param destinationChildren nombre d'entrées du répertoire destination
+     */
+    public DirectoryState(long sourceModified, int sourceChildren,
+            long destinationModified, int destinationChildren) {
+        this(sourceModified, sourceChildren, destinationModified,
+                destinationChildren, null, null);
+    }
+
+    /**
+     * Constructeur
+     * @param sourceModified date de modification du répertoire source, en
+     * millisecondes
+     * @param sourceChildren nombre d'entrées du répertoire source
+     * @param destinationModified date de modification du répertoire
+     * destination, en millisecondes
+     * @param destinationChildren nombre d'entrées du répertoire destination
+     * @param entriesDigest empreinte des entrées directes, commune aux deux
+     * côtés, {@code null} si elle n'est pas connue ou si les deux côtés
+     * diffèrent
+     * @param digest empreinte de Merkle de l'arborescence, commune aux deux
+     * côtés, {@code null} si elle n'est pas connue ou si les deux côtés
+     * diffèrent
+     */
+    public DirectoryState(long sourceModified, int sourceChildren,
+            long destinationModified, int destinationChildren,
+            String entriesDigest, String digest) {
+        this.sourceModified = sourceModified;
+        this.sourceChildren = sourceChildren;
+        this.destinationModified = destinationModified;
+        this.destinationChildren = destinationChildren;
+        this.entriesDigest = entriesDigest;
+        this.digest = digest;
+    }
+
+    // REQUÊTES
+
+    /**
+     * @return date de modification du répertoire source, en millisecondes
+     */
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    /**
+     * @return nombre d'entrées du répertoire source
+     */
+    public int getSourceChildren() {
+        return sourceChildren;
+    }
+
+    /**
+     * @return date de modification du répertoire destination, en
+     * millisecondes
+     */
+    public long getDestinationModified() {
+        return destinationModified;
+    }
+
+    /**
+     * @return nombre d'entrées du répertoire destination
+     */
+    public int getDestinationChildren() {
+        return destinationChildren;
+    }
+
+    /**
+     * @return empreinte des entrées directes du répertoire, {@code null} si
+     * elle n'est pas connue
+     */
+    public String getEntriesDigest() {
+        return entriesDigest;
+    }
+
+    /**
+     * @return empreinte de Merkle de l'arborescence, {@code null} si elle
+     * n'est pas connue
+     */
+    public String getDigest() {
+        return digest;
+    }
+}
@@ -0,0 +1,540 @@
+package Singleton;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Index des dates de synchronisation conservé dans un fichier projeté en
+ * mémoire, hors du tas Java. Le fichier contient une table de hachage à
+ * adressage ouvert, sondée linéairement, dont chaque case associe
+ * l'empreinte d'un chemin à la position du chemin dans le fichier et à sa
+ * date, suivie des chemins eux-mêmes, ajoutés au fil des insertions.
+ * Une recherche ne désérialise rien : l'empreinte du chemin désigne la case
+ * de départ et seuls les octets du chemin candidat sont comparés.
+ * L'ouverture se limite à la projection du fichier, dont les pages restent
+ * dans le cache du système d'une exécution à l'autre.
+ * Quand la table est trop remplie, elle est reconstruite deux fois plus
+ * grande dans un fichier voisin, sans les chemins retirés, qui remplace
+ * atomiquement l'ancien.
+ * Les modifications ne sont pas écrites aussitôt dans le fichier : elles
+ * sont conservées dans le tas jusqu'à la sauvegarde suivante du registre,
+ * qui les applique au fichier puis le force, comme le journal ne valide ses
+ * enregistrements qu'à la sauvegarde. Une exécution interrompue ne laisse
+ * donc dans l'index aucune date qu'elle n'a pas sauvegardée. Si le fichier
+ * n'a pas été fermé proprement, ses compteurs sont recalculés à
+ * l'ouverture.
+ *
+ * @see DateIndex index des dates
+ */
+class MappedDateIndex implements DateIndex {
+    // ATTRIBUTS
+
+    private static final long MAGIC = 0x53594E434D494458L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final long PAGE_SIZE = 1L << 30;
+    private static final long MIN_CAPACITY = 1L << 12;
+    private static final int MAX_LOAD_PERCENT = 70;
+    private static final long MIN_GROWTH = 1L << 20;
+
+    private static final int CLEAN = 12;
+    private static final int CAPACITY = 16;
+    private static final int COUNT = 24;
+    private static final int TOMBSTONES = 32;
+    private static final int KEYS_END = 40;
+
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer[] pages;
+    private long fileSize;
+    private long capacity;
+    private long count;
+    private long tombstones;
+    private long keysEnd;
+    private boolean dirty;
+    private final Map<String, Long> staged;
+    private long stagedDelta;
+
+    // CONSTRUCTEUR
+
+    private MappedDateIndex(Path path) {
+        this.path = path;
+        this.staged = new LinkedHashMap<>();
+    }
+
+    /**
+     * Ouvre un index existant
+     * @param path chemin du fichier de l'index
+     * @return index ouvert
+     * @throws IOException exception levée si le fichier ne peut être lu ou
+     * n'est pas un index de dates
+     */
+    static MappedDateIndex open(Path path) throws IOException {
+        MappedDateIndex index = new MappedDateIndex(path);
+        index.load();
+        return index;
+    }
+
+    /**
+     * Crée un index contenant les dates d'un autre index, en remplaçant un
+     * fichier existant
+     * @param path chemin du fichier de l'index
+     * @param source index dont les dates sont copiées
+     * @return index ouvert
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    static MappedDateIndex create(Path path, DateIndex source) throws IOException {
+        Path temporary = temporaryOf(path);
+        MappedDateIndex created = new MappedDateIndex(temporary);
+        created.initialize(capacityFor(source.size()));
+        source.forEach((file, date) -> created.insert(
+                file.getBytes(StandardCharsets.UTF_8), date));
+        created.force();
+        created.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    // REQUÊTES
+
+    @Override
+    public long get(String file) {
+        Long date = staged.get(file);
+        if (date != null) {
+            return date;
+        }
+        byte[] key = file.getBytes(StandardCharsets.UTF_8);
+        long slot = find(key, hashOf(key));
+        return slot < 0 ? ABSENT : getLong(slot + 16);
+    }
+
+    @Override
+    public long size() {
+        return count + stagedDelta;
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        for (long i = 0; i < capacity; i++) {
+            long slot = slotOf(i);
+            long reference = getLong(slot + 8);
+            if (reference != EMPTY && reference != TOMBSTONE) {
+                String file = new String(keyAt(reference), StandardCharsets.UTF_8);
+                if (!staged.containsKey(file)) {
+                    action.accept(file, getLong(slot + 16));
+                }
+            }
+        }
+        staged.forEach((file, date) -> {
+            if (date != ABSENT) {
+                action.accept(file, date);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Long> toMap() {
+        Map<String, Long> dates = new HashMap<>();
+        forEach(dates::put);
+        return dates;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    // COMMANDES
+
+    @Override
+    public void put(String file, long date) {
+        if (get(file) == ABSENT) {
+            stagedDelta++;
+        }
+        staged.put(file, date);
+    }
+
+    @Override
+    public boolean remove(String file) {
+        if (get(file) == ABSENT) {
+            return false;
+        }
+        stagedDelta--;
+        staged.put(file, ABSENT);
+        return true;
+    }
+
+    @Override
+    public void force() throws IOException {
+        staged.forEach((file, date) -> {
+            if (date == ABSENT) {
+                erase(file);
+            } else {
+                write(file, date);
+            }
+        });
+        staged.clear();
+        stagedDelta = 0;
+        if (!dirty) {
+            return;
+        }
+        writeCounters();
+        for (MappedByteBuffer page : pages) {
+            page.force();
+        }
+        pages[0].putInt(CLEAN, 1);
+        pages[0].force();
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        pages = null;
+        channel.close();
+    }
+
+    // OUTILS
+
+    /**
+     * Écrit la date d'un fichier dans le fichier de l'index
+     */
+    private void write(String file, long date) {
+        byte[] key = file.getBytes(StandardCharsets.UTF_8);
+        long slot = find(key, hashOf(key));
+        markDirty();
+        if (slot >= 0) {
+            putLong(slot + 16, date);
+            return;
+        }
+        if ((count + tombstones + 1) * 100 > capacity * MAX_LOAD_PERCENT) {
+            try {
+                rebuild((count + 1) * 100 > capacity * MAX_LOAD_PERCENT / 2
+                        ? capacity * 2 : capacity);
+            } catch (IOException exception) {
+                throw new IllegalStateException("cannot grow registry index", exception);
+            }
+            markDirty();
+        }
+        insert(key, date);
+    }
+
+    /**
+     * Retire un fichier du fichier de l'index
+     */
+    private void erase(String file) {
+        byte[] key = file.getBytes(StandardCharsets.UTF_8);
+        long slot = find(key, hashOf(key));
+        if (slot < 0) {
+            return;
+        }
+        markDirty();
+        putLong(slot + 8, TOMBSTONE);
+        count--;
+        tombstones++;
+        writeCounters();
+    }
+
+    /**
+     * Ouvre et projette le fichier de l'index, en recalculant ses
+     * compteurs s'il n'a pas été fermé proprement
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() != HEADER_SIZE || header.getLong() != MAGIC
+                    || header.getInt() != VERSION) {
+                throw new IOException("not a registry index: " + path);
+            }
+            boolean clean = header.getInt() == 1;
+            capacity = header.getLong();
+            count = header.getLong();
+            tombstones = header.getLong();
+            keysEnd = header.getLong();
+            fileSize = channel.size();
+            map();
+            if (!clean) {
+                recover();
+            }
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Crée un fichier vide dont la table a la capacité donnée
+     */
+    private void initialize(long capacity) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.capacity = capacity;
+        this.keysEnd = keysStart();
+        this.fileSize = 0;
+        ensureSize(keysEnd + MIN_GROWTH);
+        pages[0].putLong(0, MAGIC);
+        pages[0].putInt(8, VERSION);
+        pages[0].putLong(CAPACITY, capacity);
+        markDirty();
+        writeCounters();
+    }
+
+    /**
+     * Recalcule le nombre de cases occupées et la fin des chemins après une
+     * interruption
+     */
+    private void recover() {
+        count = 0;
+        tombstones = 0;
+        keysEnd = keysStart();
+        for (long i = 0; i < capacity; i++) {
+            long reference = getLong(slotOf(i) + 8);
+            if (reference == TOMBSTONE) {
+                tombstones++;
+            } else if (reference != EMPTY) {
+                count++;
+                keysEnd = Math.max(keysEnd, reference + Integer.BYTES + getInt(reference));
+            }
+        }
+        markDirty();
+        writeCounters();
+    }
+
+    /**
+     * Reconstruit l'index avec une nouvelle capacité dans un fichier voisin
+     * qui remplace ensuite le fichier de l'index
+     */
+    private void rebuild(long newCapacity) throws IOException {
+        Path temporary = temporaryOf(path);
+        MappedDateIndex rebuilt = new MappedDateIndex(temporary);
+        rebuilt.initialize(newCapacity);
+        rebuilt.ensureSize(rebuilt.keysEnd + (keysEnd - keysStart()));
+        for (long i = 0; i < capacity; i++) {
+            long slot = slotOf(i);
+            long reference = getLong(slot + 8);
+            if (reference != EMPTY && reference != TOMBSTONE) {
+                rebuilt.insert(keyAt(reference), getLong(slot + 16));
+            }
+        }
+        rebuilt.force();
+        rebuilt.close();
+        pages = null;
+        channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+        load();
+    }
+
+    /**
+     * Recherche la case d'un chemin
+     * @return position de la case, {@code -1} si le chemin est absent
+     */
+    private long find(byte[] key, long hash) {
+        long mask = capacity - 1;
+        for (long i = hash & mask; ; i = (i + 1) & mask) {
+            long slot = slotOf(i);
+            long reference = getLong(slot + 8);
+            if (reference == EMPTY) {
+                return -1;
+            }
+            if (reference != TOMBSTONE && getLong(slot) == hash
+                    && keyEquals(reference, key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Insère un chemin absent de l'index dans la première case libre
+     */
+    private void insert(byte[] key, long date) {
+        long hash = hashOf(key);
+        long mask = capacity - 1;
+        long i = hash & mask;
+        long reference = getLong(slotOf(i) + 8);
+        while (reference != EMPTY && reference != TOMBSTONE) {
+            i = (i + 1) & mask;
+            reference = getLong(slotOf(i) + 8);
+        }
+        long slot = slotOf(i);
+        long keyPosition = appendKey(key);
+        putLong(slot, hash);
+        putLong(slot + 16, date);
+        // la case n'est valide qu'une fois son chemin et sa date écrits
+        putLong(slot + 8, keyPosition);
+        if (reference == TOMBSTONE) {
+            tombstones--;
+        }
+        count++;
+        writeCounters();
+    }
+
+    /**
+     * Ajoute un chemin à la fin du fichier, aligné sur 4 octets
+     * @return position du chemin
+     */
+    private long appendKey(byte[] key) {
+        long position = (keysEnd + 3) & ~3L;
+        try {
+            ensureSize(position + Integer.BYTES + key.length);
+        } catch (IOException exception) {
+            throw new IllegalStateException("cannot grow registry index", exception);
+        }
+        putInt(position, key.length);
+        long offset = position + Integer.BYTES;
+        int written = 0;
+        while (written < key.length) {
+            MappedByteBuffer page = pageOf(offset + written);
+            int index = indexOf(offset + written);
+            int length = Math.min(key.length - written, page.capacity() - index);
+            page.put(index, key, written, length);
+            written += length;
+        }
+        keysEnd = offset + key.length;
+        return position;
+    }
+
+    private boolean keyEquals(long reference, byte[] key) {
+        if (getInt(reference) != key.length) {
+            return false;
+        }
+        long offset = reference + Integer.BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (pageOf(offset + i).get(indexOf(offset + i)) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] keyAt(long reference) {
+        byte[] key = new byte[getInt(reference)];
+        long offset = reference + Integer.BYTES;
+        for (int i = 0; i < key.length; i++) {
+            key[i] = pageOf(offset + i).get(indexOf(offset + i));
+        }
+        return key;
+    }
+
+    /**
+     * Agrandit le fichier et sa projection pour contenir au moins la
+     * taille donnée
+     */
+    private void ensureSize(long size) throws IOException {
+        if (size <= fileSize) {
+            return;
+        }
+        long newSize = Math.max(size, fileSize + Math.max(fileSize / 2, MIN_GROWTH));
+        channel.write(ByteBuffer.allocate(1), newSize - 1);
+        fileSize = newSize;
+        map();
+    }
+
+    private void map() throws IOException {
+        int pageCount = (int) ((fileSize + PAGE_SIZE - 1) / PAGE_SIZE);
+        pages = new MappedByteBuffer[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            long start = i * PAGE_SIZE;
+            pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                    Math.min(PAGE_SIZE, fileSize - start));
+        }
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            pages[0].putInt(CLEAN, 0);
+        }
+    }
+
+    private void writeCounters() {
+        pages[0].putLong(COUNT, count);
+        pages[0].putLong(TOMBSTONES, tombstones);
+        pages[0].putLong(KEYS_END, keysEnd);
+    }
+
+    private long keysStart() {
+        return HEADER_SIZE + capacity * SLOT_SIZE;
+    }
+
+    private static long slotOf(long index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    private MappedByteBuffer pageOf(long position) {
+        return pages[(int) (position / PAGE_SIZE)];
+    }
+
+    private static int indexOf(long position) {
+        return (int) (position % PAGE_SIZE);
+    }
+
+    // les cases et les tailles de chemins, alignées, ne chevauchent pas deux pages
+
+    private long getLong(long position) {
+        return pageOf(position).getLong(indexOf(position));
+    }
+
+    private void putLong(long position, long value) {
+        pageOf(position).putLong(indexOf(position), value);
+    }
+
+    private int getInt(long position) {
+        return pageOf(position).getInt(indexOf(position));
+    }
+
+    private void putInt(long position, int value) {
+        pageOf(position).putInt(indexOf(position), value);
+    }
+
+    /**
+     * Retourne la capacité de table, puissance de deux, d'un index de
+     * taille donnée rempli à moitié
+     */
+    private static long capacityFor(long size) {
+        long capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Empreinte FNV-1a d'un chemin, mélangée pour répartir les cases
+     */
+    private static long hashOf(byte[] key) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static Path temporaryOf(Path path) {
+        return path.resolveSibling("." + path.getFileName() + ".part");
+    }
+}
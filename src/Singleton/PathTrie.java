@@ -0,0 +1,492 @@
+package Singleton;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Index des dates de synchronisation en mémoire, sous la forme d'un arbre
+ * des chemins. Chaque répertoire n'y figure qu'une fois, quel que soit le
+ * nombre de fichiers qu'il contient, et ne conserve que les noms de ses
+ * fichiers et de ses sous-répertoires, dans des tables de hachage à
+ * adressage ouvert : les dates y sont des {@code long}, sans objet par
+ * fichier en dehors de son nom.
+ * Chaque répertoire conserve aussi la date la plus récente de son
+ * arborescence, invalidée par une suppression et recalculée à la demande,
+ * afin de parcourir, supprimer ou dater une arborescence sans parcourir
+ * tout l'index. Il est reconstruit à chaque chargement à partir du journal
+ * du registre.
+ */
+class PathTrie implements DateIndex {
+    // ATTRIBUTS
+
+    private static final char SEPARATOR = File.separatorChar;
+    private static final int INITIAL_CAPACITY = 2;
+
+    private Node root;
+    private long size;
+    private Node[] trail;
+
+    // CONSTRUCTEUR
+
+    PathTrie() {
+        this.root = new Node("");
+        this.trail = new Node[16];
+    }
+
+    // REQUÊTES
+
+    @Override
+    public long get(String path) {
+        int start = 0;
+        Node node = root;
+        for (int end = path.indexOf(SEPARATOR); end >= 0;
+                end = path.indexOf(SEPARATOR, start)) {
+            node = node.child(path, start, end);
+            if (node == null) {
+                return ABSENT;
+            }
+            start = end + 1;
+        }
+        int slot = find(node.fileNames, path, start, path.length());
+        return slot < 0 ? ABSENT : node.fileDates[slot];
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        visit(root, new StringBuilder(), action);
+    }
+
+    @Override
+    public void forEachUnder(String directory, ObjLongConsumer<String> action) {
+        Node node = directory(directory);
+        if (node != null) {
+            visit(node, new StringBuilder(prefixOf(directory)), action);
+        }
+    }
+
+    @Override
+    public long maxUnder(String directory) {
+        Node node = directory(directory);
+        return node == null ? ABSENT : refresh(node);
+    }
+
+    @Override
+    public Map<String, Long> toMap() {
+        Map<String, Long> dates = new HashMap<>();
+        forEach(dates::put);
+        return dates;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    // COMMANDES
+
+    @Override
+    public void put(String path, long date) {
+        int depth = 0;
+        int start = 0;
+        Node node = root;
+        for (int end = path.indexOf(SEPARATOR); end >= 0;
+                end = path.indexOf(SEPARATOR, start)) {
+            depth = push(node, depth);
+            Node child = node.child(path, start, end);
+            if (child == null) {
+                child = node.addChild(path.substring(start, end));
+            }
+            node = child;
+            start = end + 1;
+        }
+        depth = push(node, depth);
+        long previous = node.putFile(path, start, date);
+        if (previous == ABSENT) {
+            size++;
+        }
+        for (int i = 0; i < depth; i++) {
+            replace(trail[i], previous, date);
+        }
+    }
+
+    @Override
+    public boolean remove(String path) {
+        int depth = 0;
+        int start = 0;
+        Node node = root;
+        for (int end = path.indexOf(SEPARATOR); end >= 0;
+                end = path.indexOf(SEPARATOR, start)) {
+            depth = push(node, depth);
+            node = node.child(path, start, end);
+            if (node == null) {
+                return false;
+            }
+            start = end + 1;
+        }
+        depth = push(node, depth);
+        long previous = node.removeFile(path, start);
+        if (previous == ABSENT) {
+            return false;
+        }
+        size--;
+        for (int i = 0; i < depth; i++) {
+            replace(trail[i], previous, ABSENT);
+        }
+        prune(depth);
+        return true;
+    }
+
+    @Override
+    public List<String> removeUnder(String directory) {
+        List<String> paths = new ArrayList<>();
+        if (directory.isEmpty()) {
+            forEach((path, date) -> paths.add(path));
+            root = new Node("");
+            size = 0;
+            return paths;
+        }
+        int depth = 0;
+        int start = 0;
+        Node node = root;
+        for (int end = directory.indexOf(SEPARATOR); end >= 0;
+                end = directory.indexOf(SEPARATOR, start)) {
+            depth = push(node, depth);
+            node = node.child(directory, start, end);
+            if (node == null) {
+                return paths;
+            }
+            start = end + 1;
+        }
+        depth = push(node, depth);
+        Node removed = node.child(directory, start, directory.length());
+        if (removed == null) {
+            return paths;
+        }
+        visit(removed, new StringBuilder(prefixOf(directory)), (path, date) -> paths.add(path));
+        node.removeChild(removed);
+        size -= paths.size();
+        long max = refresh(removed);
+        for (int i = 0; i < depth; i++) {
+            replace(trail[i], max, ABSENT);
+        }
+        prune(depth);
+        return paths;
+    }
+
+    @Override
+    public void force() {
+        // conservé par le journal du registre
+    }
+
+    @Override
+    public void close() {
+        // rien à libérer
+    }
+
+    // OUTILS
+
+    /**
+     * Recherche le nœud d'un répertoire
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return nœud du répertoire, {@code null} s'il ne contient aucun
+     * fichier indexé
+     */
+    private Node directory(String directory) {
+        if (directory.isEmpty()) {
+            return root;
+        }
+        int start = 0;
+        Node node = root;
+        for (int end = directory.indexOf(SEPARATOR); node != null;
+                end = directory.indexOf(SEPARATOR, start)) {
+            if (end < 0) {
+                return node.child(directory, start, directory.length());
+            }
+            node = node.child(directory, start, end);
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Empile un nœud sur le chemin parcouru depuis la racine
+     * @param node nœud parcouru
+     * @param depth nombre de nœuds déjà empilés
+     * @return nouveau nombre de nœuds empilés
+     */
+    private int push(Node node, int depth) {
+        if (depth == trail.length) {
+            Node[] grown = new Node[depth * 2];
+            System.arraycopy(trail, 0, grown, 0, depth);
+            trail = grown;
+        }
+        trail[depth] = node;
+        return depth + 1;
+    }
+
+    /**
+     * Retire de leur parent les répertoires du chemin parcouru devenus vides
+     * @param depth nombre de nœuds empilés, racine comprise
+     */
+    private void prune(int depth) {
+        for (int i = depth - 1; i > 0 && trail[i].isEmpty(); i--) {
+            trail[i - 1].removeChild(trail[i]);
+        }
+    }
+
+    /**
+     * Met à jour la date la plus récente d'une arborescence dont une date
+     * est remplacée. Si la date remplacée était la plus récente et que la
+     * nouvelle est antérieure, la date de l'arborescence est invalidée
+     * @param node répertoire de l'arborescence
+     * @param previous date remplacée, {@link #ABSENT} si aucune
+     * @param date nouvelle date, {@link #ABSENT} si aucune
+     */
+    private static void replace(Node node, long previous, long date) {
+        if (node.stale) {
+            return;
+        }
+        if (date >= node.max) {
+            node.max = date;
+        } else if (previous == node.max) {
+            node.stale = true;
+        }
+    }
+
+    /**
+     * Recalcule si nécessaire la date la plus récente d'une arborescence, en
+     * ne parcourant que ses répertoires invalidés
+     * @param node répertoire de l'arborescence
+     * @return date la plus récente, {@link #ABSENT} si aucune
+     */
+    private static long refresh(Node node) {
+        if (node.stale) {
+            long max = ABSENT;
+            String[] names = node.fileNames;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    max = Math.max(max, node.fileDates[i]);
+                }
+            }
+            for (int i = 0; node.children != null && i < node.children.length; i++) {
+                Node child = node.children[i];
+                if (child != null) {
+                    max = Math.max(max, refresh(child));
+                }
+            }
+            node.max = max;
+            node.stale = false;
+        }
+        return node.max;
+    }
+
+    /**
+     * Parcourt les fichiers d'une arborescence
+     * @param node répertoire de l'arborescence
+     * @param prefix chemin du répertoire suivi d'un séparateur, vide pour la
+     * racine
+     * @param action action appelée avec le chemin et la date de chaque
+     * fichier
+     */
+    private static void visit(Node node, StringBuilder prefix, ObjLongConsumer<String> action) {
+        int length = prefix.length();
+        String[] names = node.fileNames;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null) {
+                action.accept(prefix.append(names[i]).toString(), node.fileDates[i]);
+                prefix.setLength(length);
+            }
+        }
+        for (int i = 0; node.children != null && i < node.children.length; i++) {
+            Node child = node.children[i];
+            if (child != null) {
+                visit(child, prefix.append(child.name).append(SEPARATOR), action);
+                prefix.setLength(length);
+            }
+        }
+    }
+
+    private static String prefixOf(String directory) {
+        return directory.isEmpty() ? "" : directory + SEPARATOR;
+    }
+
+    /**
+     * Recherche un nom dans une table de hachage à adressage ouvert
+     * @param keys noms de la table, {@code null} pour une case libre
+     * @param path texte contenant le nom recherché
+     * @param start début du nom dans le texte
+     * @param end fin du nom dans le texte, exclue
+     * @return case du nom s'il est présent, sinon {@code -(case libre) - 1}
+     */
+    private static int find(String[] keys, String path, int start, int end) {
+        int length = end - start;
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        int mask = keys.length - 1;
+        for (int slot = spread(h) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                return -slot - 1;
+            }
+            if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Recherche la case d'une table à adressage ouvert à déplacer dans une
+     * case libérée, pour que les noms suivants restent accessibles
+     * @param keys noms de la table
+     * @param hole case libérée
+     * @return case à déplacer, {@code -1} si aucune
+     */
+    private static int shiftSource(String[] keys, int hole) {
+        int mask = keys.length - 1;
+        for (int slot = (hole + 1) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            int home = spread(keys[slot].hashCode()) & mask;
+            boolean movable = hole <= slot
+                    ? home <= hole || home > slot
+                    : home <= hole && home > slot;
+            if (movable) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Répertoire de l'arbre : ses fichiers et ses sous-répertoires, dans
+     * deux tables à adressage ouvert dont le taux de remplissage ne dépasse
+     * pas trois quarts. La table des sous-répertoires n'est allouée qu'au
+     * premier d'entre eux
+     */
+    private static final class Node {
+        private final String name;
+        private String[] fileNames;
+        private long[] fileDates;
+        private int fileCount;
+        private Node[] children;
+        private String[] childNames;
+        private int childCount;
+        private long max;
+        private boolean stale;
+
+        private Node(String name) {
+            this.name = name;
+            this.fileNames = new String[INITIAL_CAPACITY];
+            this.fileDates = new long[INITIAL_CAPACITY];
+            this.max = ABSENT;
+        }
+
+        private boolean isEmpty() {
+            return fileCount == 0 && childCount == 0;
+        }
+
+        private Node child(String path, int start, int end) {
+            if (childNames == null) {
+                return null;
+            }
+            int slot = find(childNames, path, start, end);
+            return slot < 0 ? null : children[slot];
+        }
+
+        private Node addChild(String childName) {
+            if (childNames == null) {
+                childNames = new String[INITIAL_CAPACITY];
+                children = new Node[INITIAL_CAPACITY];
+            } else if ((childCount + 1) * 4 > childNames.length * 3) {
+                String[] names = childNames;
+                Node[] nodes = children;
+                childNames = new String[names.length * 2];
+                children = new Node[names.length * 2];
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i] != null) {
+                        int slot = -find(childNames, names[i], 0, names[i].length()) - 1;
+                        childNames[slot] = names[i];
+                        children[slot] = nodes[i];
+                    }
+                }
+            }
+            Node child = new Node(childName);
+            int slot = -find(childNames, childName, 0, childName.length()) - 1;
+            childNames[slot] = childName;
+            children[slot] = child;
+            childCount++;
+            return child;
+        }
+
+        private void removeChild(Node child) {
+            int hole = find(childNames, child.name, 0, child.name.length());
+            for (int slot = shiftSource(childNames, hole); slot >= 0;
+                    slot = shiftSource(childNames, hole)) {
+                childNames[hole] = childNames[slot];
+                children[hole] = children[slot];
+                hole = slot;
+            }
+            childNames[hole] = null;
+            children[hole] = null;
+            childCount--;
+        }
+
+        private long putFile(String path, int start, long date) {
+            int slot = find(fileNames, path, start, path.length());
+            if (slot >= 0) {
+                long previous = fileDates[slot];
+                fileDates[slot] = date;
+                return previous;
+            }
+            if ((fileCount + 1) * 4 > fileNames.length * 3) {
+                String[] names = fileNames;
+                long[] dates = fileDates;
+                fileNames = new String[names.length * 2];
+                fileDates = new long[names.length * 2];
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i] != null) {
+                        int free = -find(fileNames, names[i], 0, names[i].length()) - 1;
+                        fileNames[free] = names[i];
+                        fileDates[free] = dates[i];
+                    }
+                }
+                slot = find(fileNames, path, start, path.length());
+            }
+            slot = -slot - 1;
+            fileNames[slot] = start == 0 ? path : path.substring(start);
+            fileDates[slot] = date;
+            fileCount++;
+            return ABSENT;
+        }
+
+        private long removeFile(String path, int start) {
+            int hole = find(fileNames, path, start, path.length());
+            if (hole < 0) {
+                return ABSENT;
+            }
+            long previous = fileDates[hole];
+            for (int slot = shiftSource(fileNames, hole); slot >= 0;
+                    slot = shiftSource(fileNames, hole)) {
+                fileNames[hole] = fileNames[slot];
+                fileDates[hole] = fileDates[slot];
+                hole = slot;
+            }
+            fileNames[hole] = null;
+            fileCount--;
+            return previous;
+        }
+    }
+}
@@ -1,47 +1,97 @@
 package Singleton;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Singleton chargé de la gestion des données de synchronisation des fichiers.
+ * Registre chargé de la gestion des données de synchronisation des fichiers
+ * d'un profil, dont il existe une instance unique par profil.
  * Le registre a la responsabilité de maintenir un suivi des dates de
  * synchronisation pour chaque fichier dans le système. Il est essentiel pour la
  * détection de modifications de fichier, la gestion de conflits éventuels.
  * Il garantit que chaque fichier est synchronisé au bon moment en effectuant
  * une comparaison de sa date de synchronisation avec celle du répertoire cible.
+ * Ses méthodes sont synchronisées : les transferts exécutés en parallèle y
+ * enregistrent leurs dates simultanément.
+ * Les sous-répertoires connus de chaque répertoire synchronisé sont indexés
+ * à partir des états enregistrés, afin de parcourir une arborescence
+ * inchangée sans lister ses répertoires, et les fichiers sont indexés par
+ * l'empreinte de leur contenu, afin de retrouver un contenu déjà présent.
+ * Chaque modification est ajoutée à un journal binaire validé à chaque
+ * sauvegarde, qui ne réécrit donc pas tout le registre. Les fichiers du
+ * registre sont placés à côté du fichier {@code <profil>.sync} du profil et
+ * préfixés par son nom : {@code <profil>.registry.log} pour le journal,
+ * {@code <profil>.registry.idx} pour l'index projeté en mémoire et
+ * {@code <profil>.registry.xml} pour l'export XML, qui n'est mis à jour qu'à
+ * la demande, pour les outils qui le lisent. Le registre partagé par tous
+ * les profils des versions précédentes n'est importé dans celui d'un profil
+ * qu'à la demande.
+ * Le registre d'un profil est verrouillé par le fichier
+ * {@code <profil>.registry.lock} jusqu'à la fin du processus : les
+ * synchronisations de profils différents s'exécutent en parallèle, celles
+ * d'un même profil attendent la fin de la précédente.
+ * Les dates sont conservées dans un arbre des chemins, qui partage les
+ * répertoires communs et permet de parcourir, supprimer ou dater une
+ * arborescence sans parcourir tout le registre.
+ *
+ * @see PathTrie arbre des chemins
+ * @see RegistryLog journal du registre
  */
 public class Registry {
     // ATTRIBUTS
 
-    private static Registry instance;
-    private Map<String, Date> data;
-    private final String registryFile = "registry.xml";
+    private static final Map<String, Registry> instances = new HashMap<>();
+    private static final String SHARED_REGISTRY_FILE = "registry.xml";
+    private static final String SHARED_LOG_FILE = "registry.log";
+    private static final String SHARED_INDEX_FILE = "registry.idx";
+    private static final String SHARED_LOCK_FILE = "registry.lock";
+    private DateIndex data;
+    private Map<String, DirectoryState> directories;
+    private Map<String, Set<String>> subdirectories;
+    private Map<String, ContentHash> contents;
+    private Map<String, Set<String>> pathsByHash;
+    private Map<ContentKey, Set<String>> pathsByKey;
+    private RegistryLog log;
+    private boolean xmlExport;
+    private FileChannel lockChannel;
+    private final String registryFile;
+    private final String logFile;
+    private final String indexFile;
+    private final String lockFile;
 
     // CONSTRUCTEUR
 
     /**
      * Constructeur de la classe Registry
+     * @param profileName nom du profil dont le registre est chargé
      */
-    private Registry() {
-        data = new HashMap<>();
+    private Registry(String profileName) {
+        registryFile = profileName + ".registry.xml";
+        logFile = profileName + ".registry.log";
+        indexFile = profileName + ".registry.idx";
+        lockFile = profileName + ".registry.lock";
+        directories = new HashMap<>();
+        subdirectories = new HashMap<>();
+        contents = new HashMap<>();
+        pathsByHash = new HashMap<>();
+        pathsByKey = new HashMap<>();
         try {
-            loadFromFile();
-        } catch (IOException | ClassNotFoundException e) {
+            lock();
+            load();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -49,14 +99,13 @@ public class Registry {
     // REQUÊTES
 
     /**
-     * Récupère l'instance unique du registre
-     * @return instance du registre {@code Registry}
+     * Récupère l'instance unique du registre d'un profil, chargée et
+     * verrouillée lors du premier appel
+     * @param profileName nom du profil
+     * @return instance du registre {@code Registry} du profil
      */
-    public static Registry getInstance() {
-        if (instance == null) {
-            instance = new Registry();
-        }
-        return instance;
+    public static synchronized Registry getInstance(String profileName) {
+        return instances.computeIfAbsent(profileName, Registry::new);
     }
 
     /**
@@ -66,8 +115,87 @@ public class Registry {
      * @param path chemin relatif du fichier donné
      * @return date de la dernière synchronisation, {@code null} sinon
      */
-    public Date getLastSyncDate(String path) {
-        return data.get(path);
+    public synchronized Date getLastSyncDate(String path) {
+        long date = data.get(path);
+        return date == DateIndex.ABSENT ? null : new Date(date);
+    }
+
+    /**
+     * Récupère l'état d'un répertoire à la fin de sa dernière synchronisation
+     * @param path chemin relatif du répertoire donné
+     * @return état du répertoire, {@code null} s'il n'a jamais été synchronisé
+     */
+    public synchronized DirectoryState getDirectoryState(String path) {
+        return directories.get(path);
+    }
+
+    /**
+     * Récupère les noms des sous-répertoires d'un répertoire dont l'état a
+     * été enregistré, qu'ils existent encore ou non
+     * @param path chemin relatif du répertoire donné
+     * @return noms des sous-répertoires enregistrés, triés
+     */
+    public synchronized List<String> getSubdirectories(String path) {
+        Set<String> names = subdirectories.get(path);
+        return names == null ? List.of() : new ArrayList<>(names);
+    }
+
+    /**
+     * Récupère les fichiers dont l'empreinte de contenu enregistrée est celle
+     * donnée
+     * @param hash empreinte du contenu
+     * @return chemins relatifs des fichiers, liste vide si aucun
+     */
+    public synchronized List<String> getPathsByHash(String hash) {
+        Set<String> paths = pathsByHash.get(hash);
+        return paths == null ? List.of() : new ArrayList<>(paths);
+    }
+
+    /**
+     * Récupère les fichiers dont l'empreinte de contenu enregistrée a été
+     * calculée pour une copie de destination de la taille et de la date
+     * données, sans parcourir le registre
+     * @param size taille du fichier
+     * @param modified date de modification de la copie, en millisecondes
+     * @return chemins relatifs des fichiers, liste vide si aucun
+     */
+    public synchronized List<String> getPathsByContentKey(long size, long modified) {
+        Set<String> paths = pathsByKey.get(new ContentKey(size, modified));
+        return paths == null ? List.of() : new ArrayList<>(paths);
+    }
+
+    /**
+     * Récupère les fichiers enregistrés sous un répertoire, à toute
+     * profondeur
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return chemins relatifs des fichiers, liste vide si aucun
+     */
+    public synchronized List<String> getPathsUnder(String directory) {
+        List<String> paths = new ArrayList<>();
+        data.forEachUnder(directory, (path, date) -> paths.add(path));
+        return paths;
+    }
+
+    /**
+     * Récupère la date de la synchronisation la plus récente d'un fichier
+     * situé sous un répertoire, à toute profondeur
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return date de la dernière synchronisation, {@code null} si aucun
+     * fichier n'est enregistré sous le répertoire
+     */
+    public synchronized Date getLastSyncDateUnder(String directory) {
+        long date = data.maxUnder(directory);
+        return date == DateIndex.ABSENT ? null : new Date(date);
+    }
+
+    /**
+     * Récupère l'empreinte du contenu d'un fichier lors de sa dernière
+     * synchronisation
+     * @param path chemin relatif du fichier donné
+     * @return empreinte du fichier, {@code null} si elle n'est pas connue
+     */
+    public synchronized ContentHash getContentHash(String path) {
+        return contents.get(path);
     }
 
     // COMMANDES
@@ -77,65 +205,184 @@ public class Registry {
      * @param path chemin relatif du fichier donné
      * @param date nouvelle date de synchronisation
      */
-    public void updateDate(String path, Date date) {
-        data.put(path, date);
+    public synchronized void updateDate(String path, Date date) {
+        data.put(path, date.getTime());
+        if (!data.isPersistent()) {
+            log.appendDate(path, date.getTime());
+        }
+    }
+
+    /**
+     * Met à jour l'état d'un répertoire donné après sa synchronisation
+     * @param path chemin relatif du répertoire donné
+     * @param state état du répertoire
+     */
+    public synchronized void updateDirectoryState(String path, DirectoryState state) {
+        putDirectoryState(path, state);
+        log.appendDirectory(path, state);
+    }
+
+    /**
+     * Met à jour l'empreinte du contenu d'un fichier donné
+     * @param path chemin relatif du fichier donné
+     * @param hash empreinte du fichier
+     */
+    public synchronized void updateContentHash(String path, ContentHash hash) {
+        putContentHash(path, hash);
+        log.appendContent(path, hash);
+    }
+
+    /**
+     * Oublie l'empreinte du contenu d'un fichier donné, qui sera recalculée
+     * @param path chemin relatif du fichier donné
+     */
+    public synchronized void removeContentHash(String path) {
+        ContentHash removed = contents.remove(path);
+        if (removed != null) {
+            unindexContent(path, removed);
+            log.appendRemoveContent(path);
+        }
     }
 
     /**
      * Supprime un fichier du registre
      * @param path chemin du fichier à supprimer
      */
-    public void removePath(String path) {
-        data.remove(path);
+    public synchronized void removePath(String path) {
+        boolean known = data.remove(path);
+        ContentHash removed = contents.remove(path);
+        unindexContent(path, removed);
+        if (data.isPersistent()) {
+            if (removed != null) {
+                log.appendRemoveContent(path);
+            }
+        } else if (known || removed != null) {
+            log.appendRemove(path);
+        }
     }
 
     /**
-     * Sérialise toutes les données du registre dans un fichier local
-     * @throws IOException exception levée en cas d'erreur d'écriture
+     * Supprime du registre tous les fichiers situés sous un répertoire, à
+     * toute profondeur, ainsi que leurs empreintes, puis l'état du répertoire
+     * et de ses sous-répertoires
+     * @param directory chemin relatif du répertoire, vide pour la racine
+     * @return nombre de fichiers supprimés
      */
-    public void saveToFile() throws IOException {
-        try {
-            DocumentBuilderFactory BuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = BuilderFactory.newDocumentBuilder();
-            Document doc = docBuilder.newDocument();
-            Element element = doc.createElement("registry");
-            doc.appendChild(element);
-            for (Map.Entry<String, Date> entry : data.entrySet()) {
-                Element fileElement = doc.createElement("file");
-                Element pathElement = doc.createElement("path");
-                pathElement.appendChild(doc.createTextNode(entry.getKey()));
-                Element dateElement = doc.createElement("date");
-                dateElement.appendChild(doc.createTextNode(String.valueOf(entry.getValue().getTime())));
-                fileElement.appendChild(pathElement);
-                fileElement.appendChild(dateElement);
-                element.appendChild(fileElement);
+    public synchronized int removePathsUnder(String directory) {
+        List<String> paths = data.removeUnder(directory);
+        for (String path : paths) {
+            ContentHash removed = contents.remove(path);
+            unindexContent(path, removed);
+            if (!data.isPersistent()) {
+                log.appendRemove(path);
+            } else if (removed != null) {
+                log.appendRemoveContent(path);
             }
-            try {
-                Transformer transformer = TransformerFactory.newInstance().newTransformer();
-                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-                DOMSource domSource = new DOMSource(doc);
-                StreamResult streamResult = new StreamResult(new File(registryFile));
-                transformer.transform(domSource, streamResult);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        }
+        removeDirectoryStates(directory);
+        return paths.size();
+    }
+
+    /**
+     * Importe dans le registre du profil le registre partagé par tous les
+     * profils des versions précédentes : le journal {@code registry.log} et
+     * son index {@code registry.idx}, ou à défaut le fichier
+     * {@code registry.xml}. Ses chemins ne précisent pas leur profil :
+     * l'import n'a lieu qu'à la demande, pour le profil qu'il concerne, et
+     * les fichiers importés sont ensuite renommés avec le suffixe
+     * {@code .imported} pour ne pas l'être une seconde fois. Le fichier
+     * {@code registry.lock} protège l'import des autres processus.
+     * @return {@code true} si un registre partagé a été importé
+     * @throws IOException exception levée en cas d'erreur de lecture ou
+     * d'écriture
+     */
+    public synchronized boolean importSharedRegistry() throws IOException {
+        try (FileChannel sharedLock = FileChannel.open(Path.of(SHARED_LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            sharedLock.lock();
+            Path sharedLog = Path.of(SHARED_LOG_FILE);
+            Path sharedIndex = Path.of(SHARED_INDEX_FILE);
+            Path sharedXml = Path.of(SHARED_REGISTRY_FILE);
+            Path imported;
+            if (Files.exists(sharedLog)) {
+                if (Files.exists(sharedIndex)) {
+                    try (MappedDateIndex index = MappedDateIndex.open(sharedIndex)) {
+                        index.forEach((path, date) -> updateDate(path, new Date(date)));
+                    }
+                }
+                RegistryLog.open(sharedLog, importTarget()).close();
+                imported = sharedLog;
+            } else if (Files.exists(sharedXml)) {
+                RegistryXml.read(sharedXml, importTarget());
+                imported = sharedXml;
+            } else {
+                return false;
             }
+            saveToFile();
+            retire(sharedLog);
+            retire(sharedIndex);
+            retire(sharedXml);
+            System.out.println(imported + " imported into " + logFile);
+            return true;
+        }
+    }
+
+    /**
+     * Active ou désactive la réécriture du fichier
+     * {@code <profil>.registry.xml} à chaque sauvegarde, pour les outils qui
+     * lisent ce format
+     * @param xmlExport {@code true} pour maintenir le fichier à jour
+     */
+    public synchronized void setXmlExport(boolean xmlExport) {
+        this.xmlExport = xmlExport;
+    }
+
+    /**
+     * Conserve désormais les dates de synchronisation dans un index projeté
+     * en mémoire depuis le fichier {@code <profil>.registry.idx}, hors du
+     * tas Java, plutôt que dans le journal. Le journal est réécrit sans les
+     * dates. L'index est ensuite ouvert à chaque chargement du registre.
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     * @see MappedDateIndex index projeté en mémoire
+     */
+    public synchronized void useMappedIndex() throws IOException {
+        if (data.isPersistent()) {
+            return;
+        }
+        data = MappedDateIndex.create(Path.of(indexFile), data);
+        log.close();
+        log = RegistryLog.create(Path.of(logFile), snapshot());
+    }
 
-        } catch (Exception e) {
-            throw new IOException("cannot save xml file", e);
+    /**
+     * Sauvegarde les modifications du registre en les validant dans son
+     * journal, compacté en tâche de fond s'il a trop grossi, puis réécrit
+     * le fichier {@code <profil>.registry.xml} si cela a été demandé. Un
+     * index des dates projeté en mémoire est écrit durablement avant le
+     * journal.
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    public synchronized void saveToFile() throws IOException {
+        data.force();
+        log.commit();
+        if (log.needsCompaction(data.size() + directories.size() + contents.size())) {
+            log.compactInBackground(snapshot());
+        }
+        if (xmlExport) {
+            RegistryXml.write(Path.of(registryFile), data, directories, contents);
         }
     }
 
     /**
      * /!!\ Doc à définir /!!\
      */
-    public void printAllData() {
-        if (data.isEmpty()) {
+    public synchronized void printAllData() {
+        if (data.size() == 0) {
             System.out.println("Le registre est vide.");
         } else {
             System.out.println("Contenu du registre de synchronisation :");
-            for (Map.Entry<String, Date> entry : data.entrySet()) {
-                System.out.println("- " + entry.getKey() + " : " + entry.getValue());
-            }
+            data.forEach((path, date) ->
+                    System.out.println("- " + path + " : " + new Date(date)));
         }
     }
 
@@ -143,35 +390,266 @@ public class Registry {
     // OUTILS
 
     /**
-     * Charge les données de synchronisation depuis un fichier local.
-     * Si le fichier n'existe pas, aucune donnée ne sera chargée
-     * @throws IOException exception levée en cas d'erreur d'écriture
-     * @throws ClassNotFoundException exception levée en cas de fichier
-     * non trouvé
+     * Verrouille le registre du profil pour les autres processus, en
+     * attendant si nécessaire que le processus qui le détient se termine.
+     * Le verrou est conservé jusqu'à la fin du processus
+     * @throws IOException exception levée si le fichier de verrou ne peut
+     * être ouvert
+     */
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(Path.of(lockFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.tryLock();
+        if (lock == null) {
+            System.out.println(lockFile + " is held by another process, waiting");
+            lockChannel.lock();
+        }
+    }
+
+    /**
+     * Charge le registre en rejouant son journal ou, s'il n'existe pas
+     * encore, en important le fichier XML du profil dans un nouveau
+     * journal. Les dates sont lues dans l'index projeté en mémoire
+     * s'il existe.
+     * @throws IOException exception levée en cas d'erreur de lecture ou
+     * d'écriture
      */
-    private void loadFromFile() throws IOException, ClassNotFoundException {
-        File file = new File(registryFile);
-        if (!file.exists()) {
+    private void load() throws IOException {
+        Path indexPath = Path.of(indexFile);
+        Path logPath = Path.of(logFile);
+        data = Files.exists(indexPath)
+                ? MappedDateIndex.open(indexPath)
+                : new PathTrie();
+        if (Files.exists(logPath)) {
+            log = RegistryLog.open(logPath, replayTarget());
             return;
         }
+        Path xmlPath = Path.of(registryFile);
+        boolean imported = Files.exists(xmlPath);
+        if (imported) {
+            RegistryXml.read(xmlPath, replayTarget());
+        }
+        log = RegistryLog.create(logPath, snapshot());
+        if (imported) {
+            System.out.println(xmlPath + " imported into " + logFile);
+        } else if (Files.exists(Path.of(SHARED_LOG_FILE))
+                || Files.exists(Path.of(SHARED_REGISTRY_FILE))) {
+            System.out.println("a shared registry from a previous version exists,"
+                    + " use --import-registry to import it into " + logFile);
+        }
+    }
 
-        try {
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-            Document doc = docBuilder.parse(file);
-            NodeList fileNodes = doc.getElementsByTagName("file");
-            for (int i = 0; i < fileNodes.getLength(); i++) {
-                Node node = fileNodes.item(i);
-                if (node.getNodeType() == Node.ELEMENT_NODE) {
-                    Element element = (Element) node;
-                    String path = element.getElementsByTagName("path").item(0).getTextContent();
-                    String date = element.getElementsByTagName("date").item(0).getTextContent();
-                    long timestamp = Long.parseLong(date);
-                    data.put(path, new Date(timestamp));
+    /**
+     * Retourne le destinataire des entrées d'un registre importé, qui les
+     * enregistre et les ajoute au journal
+     * @return destinataire des entrées importées
+     */
+    private RegistryLog.Target importTarget() {
+        return new RegistryLog.Target() {
+            @Override
+            public void date(String path, long date) {
+                updateDate(path, new Date(date));
+            }
+
+            @Override
+            public void remove(String path) {
+                removePath(path);
+                if (directories.containsKey(path)) {
+                    removeDirectoryStates(path);
+                }
+            }
+
+            @Override
+            public void directory(String path, DirectoryState state) {
+                updateDirectoryState(path, state);
+            }
+
+            @Override
+            public void content(String path, ContentHash hash) {
+                updateContentHash(path, hash);
+            }
+
+            @Override
+            public void removeContent(String path) {
+                removeContentHash(path);
+            }
+        };
+    }
+
+    /**
+     * Renomme un fichier du registre partagé importé, pour qu'il ne soit
+     * plus importé
+     * @param file chemin du fichier, ignoré s'il n'existe pas
+     * @throws IOException exception levée si le fichier ne peut être renommé
+     */
+    private static void retire(Path file) throws IOException {
+        if (Files.exists(file)) {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".imported"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Retourne le destinataire des entrées relues dans le journal ou dans
+     * un fichier XML, qui les enregistre sans les ajouter au journal
+     * @return destinataire des entrées relues
+     */
+    private RegistryLog.Target replayTarget() {
+        return new RegistryLog.Target() {
+            // les dates d'un index persistant sont plus récentes que
+            // celles d'un journal antérieur à l'index
+
+            @Override
+            public void date(String path, long date) {
+                if (!data.isPersistent()) {
+                    data.put(path, date);
                 }
             }
-        } catch (Exception e) {
-            throw new IOException("cannot load xml file", e);
+
+            @Override
+            public void remove(String path) {
+                if (!data.isPersistent()) {
+                    data.remove(path);
+                }
+                unindexContent(path, contents.remove(path));
+                forgetDirectory(path);
+            }
+
+            @Override
+            public void directory(String path, DirectoryState state) {
+                putDirectoryState(path, state);
+            }
+
+            @Override
+            public void content(String path, ContentHash hash) {
+                putContentHash(path, hash);
+            }
+
+            @Override
+            public void removeContent(String path) {
+                unindexContent(path, contents.remove(path));
+            }
+        };
+    }
+
+    /**
+     * Copie l'état du registre, pour l'écrire dans un journal compacté
+     * @return copie des données du registre
+     */
+    private RegistryLog.Snapshot snapshot() {
+        return new RegistryLog.Snapshot(
+                data.isPersistent() ? Map.of() : data.toMap(),
+                new HashMap<>(directories), new HashMap<>(contents));
+    }
+
+    /**
+     * Enregistre l'état d'un répertoire et l'indexe auprès de son parent
+     * @param path chemin relatif du répertoire
+     * @param state état du répertoire
+     */
+    private void putDirectoryState(String path, DirectoryState state) {
+        if (directories.put(path, state) == null) {
+            indexSubdirectory(path);
+        }
+    }
+
+    /**
+     * Enregistre l'empreinte d'un fichier et l'indexe
+     * @param path chemin relatif du fichier
+     * @param hash empreinte du fichier
+     */
+    private void putContentHash(String path, ContentHash hash) {
+        unindexContent(path, contents.put(path, hash));
+        pathsByHash.computeIfAbsent(hash.getHash(), key -> new HashSet<>()).add(path);
+        pathsByKey.computeIfAbsent(ContentKey.of(hash), key -> new HashSet<>()).add(path);
+    }
+
+    /**
+     * Supprime l'état d'un répertoire et de ses sous-répertoires, trouvés
+     * par l'index des sous-répertoires, et l'ajoute au journal : une
+     * suppression relue dans le journal retire aussi l'état du répertoire de
+     * même chemin
+     * @param directory chemin relatif du répertoire
+     */
+    private void removeDirectoryStates(String directory) {
+        Set<String> children = subdirectories.get(directory);
+        if (children != null) {
+            for (String child : new ArrayList<>(children)) {
+                removeDirectoryStates(directory.isEmpty()
+                        ? child
+                        : Path.of(directory).resolve(child).toString());
+            }
+        }
+        if (forgetDirectory(directory)) {
+            log.appendRemove(directory);
+        }
+    }
+
+    /**
+     * Oublie l'état d'un répertoire et le retire de l'index des
+     * sous-répertoires de son parent
+     * @param path chemin relatif du répertoire
+     * @return {@code true} si l'état du répertoire était enregistré
+     */
+    private boolean forgetDirectory(String path) {
+        if (directories.remove(path) == null) {
+            return false;
+        }
+        subdirectories.remove(path);
+        if (!path.isEmpty()) {
+            Path directory = Path.of(path);
+            Path parent = directory.getParent();
+            String parentPath = parent == null ? "" : parent.toString();
+            Set<String> siblings = subdirectories.get(parentPath);
+            if (siblings != null && siblings.remove(directory.getFileName().toString())
+                    && siblings.isEmpty()) {
+                subdirectories.remove(parentPath);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ajoute un répertoire à l'index des sous-répertoires de son parent
+     * @param path chemin relatif du répertoire
+     */
+    private void indexSubdirectory(String path) {
+        if (path.isEmpty()) {
+            return;
+        }
+        Path directory = Path.of(path);
+        Path parent = directory.getParent();
+        subdirectories.computeIfAbsent(parent == null ? "" : parent.toString(),
+                key -> new TreeSet<>()).add(directory.getFileName().toString());
+    }
+
+    /**
+     * Retire un fichier de l'index des empreintes
+     * @param path chemin relatif du fichier
+     * @param hash empreinte retirée, {@code null} si aucune
+     */
+    private void unindexContent(String path, ContentHash hash) {
+        if (hash == null) {
+            return;
+        }
+        Set<String> paths = pathsByHash.get(hash.getHash());
+        if (paths != null && paths.remove(path) && paths.isEmpty()) {
+            pathsByHash.remove(hash.getHash());
+        }
+        ContentKey key = ContentKey.of(hash);
+        Set<String> keyed = pathsByKey.get(key);
+        if (keyed != null && keyed.remove(path) && keyed.isEmpty()) {
+            pathsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Clé d'index d'une empreinte : taille et date de modification de la
+     * copie de destination
+     */
+    private record ContentKey(long size, long modified) {
+        static ContentKey of(ContentHash hash) {
+            return new ContentKey(hash.getSize(), hash.getDestinationModified());
         }
     }
 }
@@ -0,0 +1,541 @@
+package Singleton;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal binaire du registre, en ajout seul. Chaque modification du
+ * registre y est ajoutée sous la forme d'un enregistrement compact précédé
+ * de sa taille et de sa somme de contrôle CRC32C ; une sauvegarde ajoute un
+ * enregistrement de validation puis force l'écriture du journal. Une
+ * sauvegarde ne coûte ainsi que les modifications de l'exécution.
+ * Au chargement, les enregistrements sont rejoués jusqu'à la dernière
+ * validation : les modifications d'une exécution interrompue avant sa
+ * sauvegarde, comme un enregistrement incomplet, sont ignorées puis
+ * écrasées.
+ * Lorsque le journal contient plus de {@value #COMPACTION_RATIO} fois plus
+ * d'enregistrements que le registre n'a d'entrées, il est réécrit en tâche
+ * de fond
+ * à partir d'une copie de l'état du registre prise lors d'une sauvegarde,
+ * complétée des enregistrements ajoutés pendant la réécriture, puis
+ * remplace atomiquement l'ancien journal.
+ */
+class RegistryLog implements AutoCloseable {
+    // TYPES
+
+    /**
+     * Destinataire des enregistrements rejoués au chargement du journal
+     */
+    interface Target {
+        void date(String path, long date);
+
+        void remove(String path);
+
+        void directory(String path, DirectoryState state);
+
+        void content(String path, ContentHash hash);
+
+        void removeContent(String path);
+    }
+
+    /**
+     * Copie de l'état du registre à réécrire lors d'un compactage
+     * @param dates dates de synchronisation des fichiers
+     * @param directories états des répertoires
+     * @param contents empreintes des fichiers
+     */
+    record Snapshot(Map<String, Long> dates, Map<String, DirectoryState> directories,
+            Map<String, ContentHash> contents) {
+        /**
+         * Retourne le nombre d'entrées de l'état
+         * @return nombre d'enregistrements du journal compacté
+         */
+        long size() {
+            return dates.size() + directories.size() + contents.size();
+        }
+    }
+
+    // ATTRIBUTS
+
+    /**
+     * Rapport entre le nombre d'enregistrements du journal et le nombre
+     * d'entrées du registre au-delà duquel le journal est compacté
+     */
+    static final int COMPACTION_RATIO = 2;
+
+    private static final long MIN_COMPACTION_RECORDS = 10_000;
+    private static final long MAGIC = 0x53594E4352454C47L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte DATE = 1;
+    private static final byte REMOVE = 2;
+    private static final byte DIRECTORY = 3;
+    private static final byte CONTENT = 4;
+    private static final byte REMOVE_CONTENT = 5;
+    private static final byte COMMIT = 6;
+
+    private final Path path;
+    private final ByteArrayOutputStream record;
+    private final DataOutputStream recordOutput;
+    private final CRC32C crc;
+    private FileChannel channel;
+    private DataOutputStream output;
+    private long size;
+    private long records;
+    private IOException failure;
+    private Thread compaction;
+
+    // CONSTRUCTEUR
+
+    private RegistryLog(Path path, FileChannel channel, long records) throws IOException {
+        this.path = path;
+        this.record = new ByteArrayOutputStream();
+        this.recordOutput = new DataOutputStream(record);
+        this.crc = new CRC32C();
+        this.channel = channel;
+        this.size = channel.size();
+        this.records = records;
+        this.output = outputOf(channel);
+    }
+
+    /**
+     * Ouvre un journal existant et rejoue ses enregistrements validés
+     * @param path chemin du journal
+     * @param target destinataire des enregistrements rejoués
+     * @return journal ouvert, prêt pour de nouveaux ajouts
+     * @throws IOException exception levée si le journal ne peut être lu ou
+     * n'est pas un journal de registre
+     */
+    static RegistryLog open(Path path, Target target) throws IOException {
+        Files.deleteIfExists(compactionPathOf(path));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() != HEADER_SIZE || header.getLong() != MAGIC
+                    || header.getInt() != VERSION) {
+                throw new IOException("not a registry log: " + path);
+            }
+            long committed = replay(channel, channel.size(), null);
+            long replayed = replay(channel, committed, target);
+            // modifications non validées ou enregistrement incomplet
+            channel.truncate(committed);
+            channel.position(committed);
+            return new RegistryLog(path, channel, replayed);
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Crée un journal contenant l'état donné du registre, en remplaçant un
+     * journal existant
+     * @param path chemin du journal
+     * @param snapshot état du registre
+     * @return journal ouvert, prêt pour de nouveaux ajouts
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    static RegistryLog create(Path path, Snapshot snapshot) throws IOException {
+        writeCompacted(compactionPathOf(path), snapshot).close();
+        Files.move(compactionPathOf(path), path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new RegistryLog(path, channel, snapshot.size());
+    }
+
+    // REQUÊTES
+
+    /**
+     * Indique si le journal contient assez d'enregistrements remplacés pour
+     * être compacté
+     * @param entries nombre d'entrées du registre
+     * @return {@code true} si le journal doit être compacté
+     */
+    synchronized boolean needsCompaction(long entries) {
+        return compaction == null
+                && records > COMPACTION_RATIO * Math.max(entries, MIN_COMPACTION_RECORDS);
+    }
+
+    // COMMANDES
+
+    /**
+     * Ajoute la date de synchronisation d'un fichier
+     * @param file chemin relatif du fichier
+     * @param date date en millisecondes
+     */
+    synchronized void appendDate(String file, long date) {
+        try {
+            begin(DATE).writeUTF(file);
+            recordOutput.writeLong(date);
+            end();
+        } catch (IOException exception) {
+            fail(exception);
+        }
+    }
+
+    /**
+     * Ajoute la suppression d'un fichier du registre
+     * @param file chemin relatif du fichier
+     */
+    synchronized void appendRemove(String file) {
+        try {
+            begin(REMOVE).writeUTF(file);
+            end();
+        } catch (IOException exception) {
+            fail(exception);
+        }
+    }
+
+    /**
+     * Ajoute l'état d'un répertoire
+     * @param directory chemin relatif du répertoire
+     * @param state état du répertoire
+     */
+    synchronized void appendDirectory(String directory, DirectoryState state) {
+        try {
+            writeDirectory(begin(DIRECTORY), directory, state);
+            end();
+        } catch (IOException exception) {
+            fail(exception);
+        }
+    }
+
+    /**
+     * Ajoute l'empreinte du contenu d'un fichier
+     * @param file chemin relatif du fichier
+     * @param hash empreinte du fichier
+     */
+    synchronized void appendContent(String file, ContentHash hash) {
+        try {
+            writeContent(begin(CONTENT), file, hash);
+            end();
+        } catch (IOException exception) {
+            fail(exception);
+        }
+    }
+
+    /**
+     * Ajoute l'oubli de l'empreinte d'un fichier
+     * @param file chemin relatif du fichier
+     */
+    synchronized void appendRemoveContent(String file) {
+        try {
+            begin(REMOVE_CONTENT).writeUTF(file);
+            end();
+        } catch (IOException exception) {
+            fail(exception);
+        }
+    }
+
+    /**
+     * Valide les enregistrements ajoutés depuis la validation précédente et
+     * force leur écriture
+     * @throws IOException exception levée si un enregistrement n'a pu être
+     * écrit depuis la dernière validation
+     */
+    synchronized void commit() throws IOException {
+        if (failure != null) {
+            IOException exception = failure;
+            failure = null;
+            throw exception;
+        }
+        begin(COMMIT);
+        end();
+        output.flush();
+        channel.force(false);
+    }
+
+    /**
+     * Compacte le journal en tâche de fond. L'état donné doit être celui du
+     * registre à la dernière validation.
+     * @param snapshot copie de l'état du registre
+     */
+    synchronized void compactInBackground(Snapshot snapshot) {
+        if (compaction != null) {
+            return;
+        }
+        long offset = size;
+        long replaced = records;
+        compaction = new Thread(() -> compact(snapshot, offset, replaced),
+                "registry-compaction");
+        compaction.start();
+    }
+
+    /**
+     * Attend la fin d'un compactage en cours puis ferme le journal
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    @Override
+    public void close() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            output.flush();
+            channel.close();
+        }
+    }
+
+    // OUTILS
+
+    /**
+     * Réécrit le journal à partir d'un état du registre, y ajoute les
+     * enregistrements écrits depuis cet état puis remplace l'ancien journal
+     * @param snapshot état du registre à la position donnée du journal
+     * @param offset position du journal correspondant à l'état
+     * @param replaced nombre d'enregistrements du journal à cette position
+     */
+    private void compact(Snapshot snapshot, long offset, long replaced) {
+        Path compacted = compactionPathOf(path);
+        try (FileChannel out = writeCompacted(compacted, snapshot)) {
+            synchronized (this) {
+                output.flush();
+                long position = offset;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+                out.force(false);
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                long previousSize = size;
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                size = channel.size();
+                channel.position(size);
+                output = outputOf(channel);
+                records = snapshot.size() + records - replaced;
+                System.out.println("registry log compacted from " + previousSize
+                        + " to " + size + " bytes");
+            }
+        } catch (IOException exception) {
+            System.out.println("error with the compaction of the registry log "
+                    + exception.getMessage());
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException ignored) {
+                // supprimé à la prochaine ouverture
+            }
+        } finally {
+            synchronized (this) {
+                compaction = null;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void awaitCompaction() {
+        boolean interrupted = false;
+        while (compaction != null) {
+            try {
+                wait();
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Écrit un journal contenant l'état donné, suivi d'une validation
+     * @param file chemin du journal à écrire
+     * @param snapshot état du registre
+     * @return canal du journal écrit, positionné à sa fin
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    private static FileChannel writeCompacted(Path file, Snapshot snapshot)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            RegistryLog writer = new RegistryLog(file, channel, 0);
+            for (Map.Entry<String, Long> entry : snapshot.dates().entrySet()) {
+                writer.begin(DATE).writeUTF(entry.getKey());
+                writer.recordOutput.writeLong(entry.getValue());
+                writer.end();
+            }
+            for (Map.Entry<String, DirectoryState> entry : snapshot.directories().entrySet()) {
+                writeDirectory(writer.begin(DIRECTORY), entry.getKey(), entry.getValue());
+                writer.end();
+            }
+            for (Map.Entry<String, ContentHash> entry : snapshot.contents().entrySet()) {
+                writeContent(writer.begin(CONTENT), entry.getKey(), entry.getValue());
+                writer.end();
+            }
+            writer.begin(COMMIT);
+            writer.end();
+            writer.output.flush();
+            channel.force(false);
+            return channel;
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Relit les enregistrements du journal
+     * @param channel canal du journal
+     * @param limit position de fin de lecture
+     * @param target destinataire des enregistrements, {@code null} pour
+     * seulement rechercher la dernière validation
+     * @return position de la fin de la dernière validation lue, ou nombre
+     * d'enregistrements transmis au destinataire
+     * @throws IOException exception levée en cas d'erreur de lecture
+     */
+    private static long replay(FileChannel channel, long limit, Target target)
+            throws IOException {
+        channel.position(HEADER_SIZE);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), BUFFER_SIZE));
+        long position = HEADER_SIZE;
+        long committed = HEADER_SIZE;
+        long applied = 0;
+        CRC32C crc = new CRC32C();
+        byte[] payload = new byte[256];
+        try {
+            while (position < limit) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 1 || length > limit - position - 2 * Integer.BYTES) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                input.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                position += 2 * Integer.BYTES + length;
+                if (payload[0] == COMMIT) {
+                    committed = position;
+                } else if (target != null) {
+                    apply(new DataInputStream(new ByteArrayInputStream(payload, 1,
+                            length - 1)), payload[0], target);
+                    applied++;
+                }
+            }
+        } catch (EOFException exception) {
+            // enregistrement incomplet
+        }
+        return target == null ? committed : applied;
+    }
+
+    /**
+     * Transmet un enregistrement relu à son destinataire
+     */
+    private static void apply(DataInputStream input, byte type, Target target)
+            throws IOException {
+        String file = input.readUTF();
+        switch (type) {
+            case DATE -> target.date(file, input.readLong());
+            case REMOVE -> target.remove(file);
+            case DIRECTORY -> target.directory(file, new DirectoryState(
+                    input.readLong(), input.readInt(), input.readLong(),
+                    input.readInt(), readOptional(input), readOptional(input)));
+            case CONTENT -> target.content(file, new ContentHash(input.readLong(),
+                    input.readLong(), input.readLong(), input.readUTF()));
+            case REMOVE_CONTENT -> target.removeContent(file);
+            default -> throw new IOException("unknown registry log record " + type);
+        }
+    }
+
+    private DataOutputStream begin(byte type) throws IOException {
+        if (type != COMMIT) {
+            records++;
+        }
+        record.reset();
+        recordOutput.writeByte(type);
+        return recordOutput;
+    }
+
+    private void end() throws IOException {
+        crc.reset();
+        crc.update(record.toByteArray());
+        output.writeInt(record.size());
+        output.writeInt((int) crc.getValue());
+        record.writeTo(output);
+        size += 2 * Integer.BYTES + record.size();
+    }
+
+    private void fail(IOException exception) {
+        if (failure == null) {
+            failure = exception;
+        }
+    }
+
+    private static void writeDirectory(DataOutputStream out, String directory,
+            DirectoryState state) throws IOException {
+        out.writeUTF(directory);
+        out.writeLong(state.getSourceModified());
+        out.writeInt(state.getSourceChildren());
+        out.writeLong(state.getDestinationModified());
+        out.writeInt(state.getDestinationChildren());
+        writeOptional(out, state.getEntriesDigest());
+        writeOptional(out, state.getDigest());
+    }
+
+    private static void writeContent(DataOutputStream out, String file,
+            ContentHash hash) throws IOException {
+        out.writeUTF(file);
+        out.writeLong(hash.getSize());
+        out.writeLong(hash.getSourceModified());
+        out.writeLong(hash.getDestinationModified());
+        out.writeUTF(hash.getHash());
+    }
+
+    private static void writeOptional(DataOutputStream out, String text)
+            throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static String readOptional(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * Ouvre le flux d'ajout au journal, en écrivant son en-tête s'il est vide
+     */
+    private DataOutputStream outputOf(FileChannel channel) throws IOException {
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel), BUFFER_SIZE));
+        if (size == 0) {
+            stream.writeLong(MAGIC);
+            stream.writeInt(VERSION);
+            size = HEADER_SIZE;
+        }
+        return stream;
+    }
+
+    private static Path compactionPathOf(Path path) {
+        return path.resolveSibling("." + path.getFileName() + ".compact");
+    }
+}
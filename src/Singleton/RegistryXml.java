@@ -0,0 +1,217 @@
+package Singleton;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lecture et écriture en flux du registre au format XML
+ * {@code <registry><file><path/><date/></file>...</registry>}, complété des
+ * éléments {@code <directory>} et {@code <content>}. Le document n'est
+ * jamais chargé en mémoire : chaque entrée est transmise dès sa lecture, et
+ * écrite dès son parcours, au travers de tampons de taille fixe sur des
+ * canaux de fichiers. Le fichier est écrit à côté puis remplace atomiquement
+ * l'ancien, les outils qui le lisent ne voient donc jamais un fichier
+ * partiel.
+ */
+final class RegistryXml {
+    // ATTRIBUTS
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String ENCODING = "UTF-8";
+
+    // CONSTRUCTEUR
+
+    private RegistryXml() {
+    }
+
+    // COMMANDES
+
+    /**
+     * Lit un fichier XML du registre
+     * @param file chemin du fichier
+     * @param target destinataire des entrées lues
+     * @throws IOException exception levée si le fichier ne peut être lu ou
+     * n'est pas un registre valide
+     */
+    static void read(Path file, RegistryLog.Target target) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             InputStream input = new BufferedInputStream(
+                     Channels.newInputStream(channel), BUFFER_SIZE)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(input);
+            try {
+                Map<String, String> fields = new HashMap<>();
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 3) {
+                            fields.put(reader.getLocalName(), reader.getElementText());
+                            depth--;
+                        } else if (depth == 2) {
+                            fields.clear();
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == 2) {
+                            apply(reader.getLocalName(), fields, target);
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | RuntimeException exception) {
+            throw new IOException("cannot load xml file " + file, exception);
+        }
+    }
+
+    /**
+     * Écrit le registre dans un fichier XML
+     * @param file chemin du fichier
+     * @param dates dates de synchronisation des fichiers
+     * @param directories états des répertoires
+     * @param contents empreintes des fichiers
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    static void write(Path file, DateIndex dates, Map<String, DirectoryState> directories,
+            Map<String, ContentHash> contents) throws IOException {
+        Path temporary = file.resolveSibling("." + file.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream output = new BufferedOutputStream(
+                     Channels.newOutputStream(channel), BUFFER_SIZE)) {
+            XMLStreamWriter writer = XMLOutputFactory.newFactory()
+                    .createXMLStreamWriter(output, ENCODING);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("registry");
+            XMLStreamException[] failure = new XMLStreamException[1];
+            dates.forEach((path, date) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    startEntry(writer, "file");
+                    writeField(writer, "path", path);
+                    writeField(writer, "date", String.valueOf(date));
+                    endEntry(writer);
+                } catch (XMLStreamException exception) {
+                    failure[0] = exception;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            for (Map.Entry<String, DirectoryState> entry : directories.entrySet()) {
+                DirectoryState state = entry.getValue();
+                startEntry(writer, "directory");
+                writeField(writer, "path", entry.getKey());
+                writeField(writer, "sourceDate", String.valueOf(state.getSourceModified()));
+                writeField(writer, "sourceCount", String.valueOf(state.getSourceChildren()));
+                writeField(writer, "destinationDate",
+                        String.valueOf(state.getDestinationModified()));
+                writeField(writer, "destinationCount",
+                        String.valueOf(state.getDestinationChildren()));
+                if (state.getEntriesDigest() != null) {
+                    writeField(writer, "entriesDigest", state.getEntriesDigest());
+                }
+                if (state.getDigest() != null) {
+                    writeField(writer, "digest", state.getDigest());
+                }
+                endEntry(writer);
+            }
+            for (Map.Entry<String, ContentHash> entry : contents.entrySet()) {
+                ContentHash hash = entry.getValue();
+                startEntry(writer, "content");
+                writeField(writer, "path", entry.getKey());
+                writeField(writer, "size", String.valueOf(hash.getSize()));
+                writeField(writer, "sourceDate", String.valueOf(hash.getSourceModified()));
+                writeField(writer, "destinationDate",
+                        String.valueOf(hash.getDestinationModified()));
+                writeField(writer, "hash", hash.getHash());
+                endEntry(writer);
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException exception) {
+            Files.deleteIfExists(temporary);
+            throw new IOException("cannot save xml file " + file, exception);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // OUTILS
+
+    /**
+     * Transmet une entrée lue à son destinataire
+     * @param element nom de l'élément de l'entrée
+     * @param fields texte des éléments enfants de l'entrée, par nom
+     * @param target destinataire de l'entrée
+     */
+    private static void apply(String element, Map<String, String> fields,
+            RegistryLog.Target target) {
+        switch (element) {
+            case "file" -> target.date(fields.get("path"),
+                    Long.parseLong(fields.get("date")));
+            case "directory" -> target.directory(fields.get("path"), new DirectoryState(
+                    Long.parseLong(fields.get("sourceDate")),
+                    Integer.parseInt(fields.get("sourceCount")),
+                    Long.parseLong(fields.get("destinationDate")),
+                    Integer.parseInt(fields.get("destinationCount")),
+                    fields.get("entriesDigest"),
+                    fields.get("digest")));
+            case "content" -> target.content(fields.get("path"), new ContentHash(
+                    Long.parseLong(fields.get("size")),
+                    Long.parseLong(fields.get("sourceDate")),
+                    Long.parseLong(fields.get("destinationDate")),
+                    fields.get("hash")));
+            default -> {
+                // élément inconnu ignoré
+            }
+        }
+    }
+
+    private static void startEntry(XMLStreamWriter writer, String name)
+            throws XMLStreamException {
+        writer.writeCharacters("\n    ");
+        writer.writeStartElement(name);
+    }
+
+    private static void endEntry(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+    }
+
+    private static void writeField(XMLStreamWriter writer, String name, String text)
+            throws XMLStreamException {
+        writer.writeCharacters("\n        ");
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+}
@@ -0,0 +1,46 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Copie dans le noyau par {@link FileChannel#transferTo}, traduite sous
+ * Linux en {@code copy_file_range} ou {@code sendfile} : les octets ne
+ * transitent pas par le tas Java. Le transfert est répété tant que le
+ * noyau n'a pas copié tout le fichier. La copie est écrite dans un fichier
+ * temporaire recréé plutôt que tronqué, la libération des blocs d'un
+ * fichier tronqué coûtant plus cher que celle d'un fichier supprimé, puis
+ * publiée à la place de la destination.
+ */
+public class ChannelCopyStrategy implements CopyStrategy {
+    // COMMANDES
+
+    @Override
+    public long copy(Path source, Path destination, long size,
+            FileTime lastModified, WriteCommitter committer) throws IOException {
+        Path temporary = WriteCommitter.temporaryOf(destination);
+        WriteCommitter.discard(temporary);
+        long position = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temporary,
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long length = in.size();
+            while (position < length) {
+                long transferred = in.transferTo(position, length - position, out);
+                if (transferred <= 0) {
+                    // fichier tronqué pendant la copie
+                    break;
+                }
+                position += transferred;
+            }
+        } catch (IOException exception) {
+            WriteCommitter.discard(temporary);
+            throw exception;
+        }
+        committer.publish(temporary, destination, lastModified);
+        return position;
+    }
+}
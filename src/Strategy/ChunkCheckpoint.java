@@ -0,0 +1,158 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fichier de reprise d'une copie par segments, voisin du fichier temporaire.
+ * Un en-tête identifie le fichier source (taille, date de modification) et
+ * la taille des segments ; chaque segment copié et écrit durablement y est
+ * ensuite ajouté avec la somme de contrôle CRC32C de son contenu. Un
+ * enregistrement incomplet, écrit lors d'une interruption, est ignoré à la
+ * relecture.
+ */
+class ChunkCheckpoint implements AutoCloseable {
+    // ATTRIBUTS
+
+    /**
+     * Suffixe ajouté au nom du fichier temporaire pour former celui du
+     * fichier de reprise
+     */
+    static final String SUFFIX = ".chunks";
+
+    private static final long MAGIC = 0x53594E434348554EL;
+    private static final int HEADER_SIZE = 4 * Long.BYTES;
+    private static final int RECORD_SIZE = 2 * Long.BYTES;
+
+    private final FileChannel channel;
+    private final Map<Long, Long> chunks;
+
+    // CONSTRUCTEUR
+
+    private ChunkCheckpoint(FileChannel channel, Map<Long, Long> chunks) {
+        this.channel = channel;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Ouvre le fichier de reprise d'une copie. S'il correspond au même
+     * fichier source et à la même taille de segments, les segments déjà
+     * copiés sont relus ; sinon il est recréé vide.
+     * @param path chemin du fichier de reprise
+     * @param size taille du fichier source
+     * @param lastModified date de modification du fichier source, en
+     * millisecondes
+     * @param chunkSize taille des segments
+     * @return fichier de reprise ouvert
+     * @throws IOException exception levée en cas d'erreur de lecture ou
+     * d'écriture
+     */
+    static ChunkCheckpoint open(Path path, long size, long lastModified,
+            long chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            Map<Long, Long> chunks = new HashMap<>();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            boolean matching = header.remaining() == HEADER_SIZE
+                    && header.getLong() == MAGIC
+                    && header.getLong() == size
+                    && header.getLong() == lastModified
+                    && header.getLong() == chunkSize;
+            if (matching) {
+                long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+                ByteBuffer buffer = ByteBuffer.allocate((int) (records * RECORD_SIZE));
+                channel.read(buffer, HEADER_SIZE);
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    chunks.put(buffer.getLong(), buffer.getLong());
+                }
+                // un enregistrement incomplet est écrasé par le suivant
+                channel.position(HEADER_SIZE + records * RECORD_SIZE);
+            } else {
+                channel.truncate(0);
+                header.clear();
+                header.putLong(MAGIC).putLong(size).putLong(lastModified)
+                        .putLong(chunkSize).flip();
+                channel.write(header, 0);
+                channel.force(false);
+                channel.position(HEADER_SIZE);
+            }
+            return new ChunkCheckpoint(channel, chunks);
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne les segments déjà copiés lors d'une exécution précédente
+     * @return sommes de contrôle indexées par position de segment
+     */
+    Map<Long, Long> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Retourne le chemin du fichier de reprise d'un fichier temporaire
+     * @param temporary chemin du fichier temporaire
+     * @return chemin du fichier de reprise
+     */
+    static Path pathOf(Path temporary) {
+        return temporary.resolveSibling(temporary.getFileName() + SUFFIX);
+    }
+
+    // COMMANDES
+
+    /**
+     * Enregistre durablement un segment copié. Le contenu du segment doit
+     * avoir été écrit durablement auparavant.
+     * @param position position du segment dans le fichier
+     * @param checksum somme de contrôle du segment
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    synchronized void record(long position, long checksum) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(position).putLong(checksum).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Oublie durablement les segments enregistrés, avant la recréation du
+     * fichier temporaire qu'ils décrivent
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    synchronized void reset() throws IOException {
+        channel.truncate(HEADER_SIZE);
+        channel.force(false);
+        channel.position(HEADER_SIZE);
+        chunks.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Supprime le fichier de reprise d'un fichier temporaire
+     * @param temporary chemin du fichier temporaire
+     * @throws IOException exception levée en cas d'erreur de suppression
+     */
+    static void delete(Path temporary) throws IOException {
+        Files.deleteIfExists(pathOf(temporary));
+    }
+}
@@ -0,0 +1,308 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Copie parallèle des fichiers volumineux. Au-delà d'un seuil configurable,
+ * le fichier est découpé en segments copiés simultanément par des lectures
+ * et écritures positionnelles de {@link FileChannel}, dans un fichier
+ * temporaire voisin de la destination dont la taille finale est réservée
+ * avant la copie. Le fichier temporaire n'est publié à la place de la
+ * destination que si tous les segments ont été copiés ; la destination
+ * n'est donc jamais laissée partiellement écrite. En deçà du seuil, la copie est déléguée à
+ * une autre stratégie.
+ * En mode reprise, chaque segment copié est enregistré dans un fichier de
+ * reprise voisin, éventuellement avec sa somme de contrôle : après une
+ * interruption, le fichier temporaire est conservé et la copie suivante du
+ * même fichier source ne recopie que les segments manquants ou dont le
+ * contenu ne correspond plus à la somme enregistrée.
+ *
+ * @see ChunkCheckpoint fichier de reprise
+ *
+ * @see CopyStrategy stratégie de copie
+ */
+public class ChunkedCopyStrategy implements CopyStrategy {
+    // ATTRIBUTS
+
+    /**
+     * Taille par défaut à partir de laquelle un fichier est copié par
+     * segments : 1 Gio
+     */
+    public static final long DEFAULT_THRESHOLD = 1L << 30;
+
+    /**
+     * Taille par défaut d'un segment : 64 Mio
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 64L << 20;
+
+    /**
+     * Nombre par défaut de segments copiés simultanément
+     */
+    public static final int DEFAULT_STREAMS = 4;
+
+    private final CopyStrategy smallFileStrategy;
+    private long threshold;
+    private long chunkSize;
+    private int streams;
+    private boolean resumable;
+    private boolean verifyChunks;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur utilisant le seuil, la taille des segments et le nombre
+     * de copies simultanées par défaut
+     * @param smallFileStrategy stratégie de copie des fichiers sous le seuil
+     */
+    public ChunkedCopyStrategy(CopyStrategy smallFileStrategy) {
+        this.smallFileStrategy = smallFileStrategy;
+        this.threshold = DEFAULT_THRESHOLD;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.streams = DEFAULT_STREAMS;
+    }
+
+    // COMMANDES
+
+    /**
+     * Défini la taille à partir de laquelle un fichier est copié par segments
+     * @param threshold taille en octets
+     */
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Défini la taille d'un segment
+     * @param chunkSize taille en octets, strictement positive
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(
+                    "chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Défini le nombre de segments d'un même fichier copiés simultanément
+     * @param streams nombre de copies simultanées, strictement positif
+     */
+    public void setStreams(int streams) {
+        if (streams < 1) {
+            throw new IllegalArgumentException(
+                    "streams must be positive: " + streams);
+        }
+        this.streams = streams;
+    }
+
+    /**
+     * Active ou désactive la reprise des copies interrompues
+     * @param resumable {@code true} pour conserver les segments copiés d'une
+     * copie interrompue et les réutiliser
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Active ou désactive la vérification des segments réutilisés lors d'une
+     * reprise : la somme de contrôle de chaque segment est enregistrée après
+     * sa copie et recalculée avant sa réutilisation
+     * @param verifyChunks {@code true} pour vérifier les segments
+     */
+    public void setVerifyChunks(boolean verifyChunks) {
+        this.verifyChunks = verifyChunks;
+    }
+
+    @Override
+    public long copy(Path source, Path destination, long size,
+            FileTime lastModified, WriteCommitter committer) throws IOException {
+        long length = size >= 0 ? size : Files.size(source);
+        if (length < threshold || length <= chunkSize) {
+            return smallFileStrategy.copy(source, destination, size,
+                    lastModified, committer);
+        }
+        Path temporary = WriteCommitter.temporaryOf(destination);
+        boolean complete = false;
+        try {
+            if (resumable) {
+                copyResumable(source, temporary, length);
+            } else {
+                ChunkCheckpoint.delete(temporary);
+                preallocate(temporary, length);
+                copyChunks(source, temporary, length, Map.of(), null);
+            }
+            complete = true;
+            committer.publish(temporary, destination, lastModified);
+            if (resumable) {
+                ChunkCheckpoint.delete(temporary);
+            }
+            return length;
+        } finally {
+            if (!complete && !resumable) {
+                WriteCommitter.discard(temporary);
+            }
+        }
+    }
+
+    // OUTILS
+
+    /**
+     * Crée le fichier temporaire en réservant sa taille finale
+     * @param temporary chemin du fichier temporaire
+     * @param length taille du fichier copié
+     * @throws IOException exception levée si le fichier ne peut être créé
+     */
+    private static void preallocate(Path temporary, long length) throws IOException {
+        try (FileChannel out = FileChannel.open(temporary,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    /**
+     * Copie un fichier en reprenant, s'il y a lieu, une copie interrompue du
+     * même fichier source
+     * @param source chemin du fichier source
+     * @param temporary chemin du fichier temporaire
+     * @param length taille du fichier copié
+     * @throws IOException exception levée si un segment n'a pu être copié,
+     * les segments copiés restent enregistrés
+     */
+    private void copyResumable(Path source, Path temporary, long length)
+            throws IOException {
+        long lastModified = Files.getLastModifiedTime(source).toMillis();
+        try (ChunkCheckpoint checkpoint = ChunkCheckpoint.open(
+                ChunkCheckpoint.pathOf(temporary), length, lastModified, chunkSize)) {
+            Map<Long, Long> done = checkpoint.getChunks();
+            if (done.isEmpty() || !Files.exists(temporary)) {
+                // segments enregistrés d'un fichier temporaire disparu
+                checkpoint.reset();
+                done = Map.of();
+                preallocate(temporary, length);
+            } else {
+                System.out.println("resuming copy of " + source + ": "
+                        + done.size() + " chunks already copied");
+            }
+            copyChunks(source, temporary, length, done, checkpoint);
+        }
+    }
+
+    /**
+     * Copie en parallèle les segments du fichier qui ne sont pas déjà copiés
+     * et attend leur fin
+     * @param source chemin du fichier source
+     * @param temporary chemin du fichier temporaire
+     * @param length taille du fichier copié
+     * @param done sommes de contrôle des segments déjà copiés, indexées par
+     * position
+     * @param checkpoint fichier de reprise, {@code null} hors mode reprise
+     * @throws IOException exception levée si un segment n'a pu être copié
+     */
+    private void copyChunks(Path source, Path temporary, long length,
+            Map<Long, Long> done, ChunkCheckpoint checkpoint)
+            throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(streams);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (long position = 0; position < length; position += chunkSize) {
+                long start = position;
+                long count = Math.min(chunkSize, length - position);
+                Long checksum = done.get(start);
+                futures.add(executor.submit(() -> {
+                    if (checksum != null && (!verifyChunks
+                            || checksum == checksumOf(temporary, start, count))) {
+                        return null;
+                    }
+                    copyChunk(source, temporary, start, count, checkpoint != null);
+                    if (checkpoint != null) {
+                        checkpoint.record(start, verifyChunks
+                                ? checksumOf(temporary, start, count) : 0);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted copy of " + source);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copie un segment du fichier source à la même position dans le fichier
+     * temporaire
+     * @param source chemin du fichier source
+     * @param temporary chemin du fichier temporaire
+     * @param start position du segment
+     * @param count taille du segment
+     * @param durable {@code true} pour écrire durablement le segment avant
+     * de rendre la main
+     * @throws IOException exception levée en cas d'erreur ou si le fichier
+     * source a été tronqué
+     */
+    private static void copyChunk(Path source, Path temporary, long start,
+            long count, boolean durable) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            out.position(start);
+            long copied = 0;
+            while (copied < count) {
+                long transferred = in.transferTo(start + copied, count - copied, out);
+                if (transferred <= 0) {
+                    throw new IOException("source truncated during copy: " + source);
+                }
+                copied += transferred;
+            }
+            if (durable) {
+                out.force(false);
+            }
+        }
+    }
+
+    /**
+     * Calcule la somme de contrôle CRC32C d'un segment du fichier
+     * temporaire, lu par projection en mémoire
+     * @param temporary chemin du fichier temporaire
+     * @param start position du segment
+     * @param count taille du segment
+     * @return somme de contrôle du segment
+     * @throws IOException exception levée en cas d'erreur de lecture
+     */
+    private static long checksumOf(Path temporary, long start, long count)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ)) {
+            for (long offset = 0; offset < count; offset += Integer.MAX_VALUE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                        start + offset, Math.min(Integer.MAX_VALUE, count - offset)));
+            }
+        }
+        return crc.getValue();
+    }
+}
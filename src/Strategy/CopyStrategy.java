@@ -0,0 +1,36 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Interface du patron Strategy représentant une manière de copier le contenu
+ * d'un fichier. Le système de fichiers local délègue la copie des octets à
+ * une stratégie et se charge lui-même des répertoires. Une stratégie écrit
+ * la copie dans un fichier temporaire et la confie à un
+ * {@link WriteCommitter} qui lui applique sa date puis la publie.
+ *
+ * @see Adapter.LocalFileSystemAdapter système de fichiers local
+ */
+public interface CopyStrategy {
+    // COMMANDES
+
+    /**
+     * Copie le contenu d'un fichier, en remplaçant la destination si elle
+     * existe. Le répertoire parent de la destination doit exister. La copie
+     * n'est visible à sa destination qu'une fois publiée par le
+     * {@code committer}, éventuellement après le retour de la méthode.
+     * @param source chemin du fichier source
+     * @param destination chemin de la copie
+     * @param size taille du fichier source lue lors du parcours, {@code -1}
+     * si inconnue
+     * @param lastModified date de modification à appliquer à la copie
+     * @param committer publication des copies
+     * @return nombre d'octets copiés
+     * @throws IOException exception levée en cas d'erreur de lecture ou
+     * d'écriture
+     */
+    long copy(Path source, Path destination, long size, FileTime lastModified,
+            WriteCommitter committer) throws IOException;
+}
@@ -0,0 +1,465 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copie différentielle, à la manière de rsync, d'un fichier volumineux dont
+ * une version précédente existe déjà en destination.
+ * La destination est découpée en blocs dont on calcule une somme de contrôle
+ * faible, calculable en glissant d'un octet, et une empreinte MD5. La source
+ * est ensuite parcourue avec une fenêtre glissante : chaque fenêtre dont la
+ * somme faible puis l'empreinte correspondent à un bloc de la destination
+ * est reprise de la destination, le reste est copié depuis la source.
+ * Le fichier est reconstruit dans un fichier temporaire voisin qui remplace
+ * ensuite la destination : un lecteur voit l'ancienne version ou la
+ * nouvelle, jamais un fichier en cours de modification.
+ * La réécriture en place, qui évite de réécrire tout le fichier, doit être
+ * activée explicitement : si tous les blocs repris le sont à leur position
+ * d'origine et que la destination ne partage pas son contenu avec d'autres
+ * liens physiques, seules les zones modifiées sont alors réécrites, dans la
+ * destination elle-même, au prix de l'atomicité.
+ * Les fichiers sous le seuil, ou absents de la destination, sont copiés
+ * entièrement par une autre stratégie.
+ *
+ * @see CopyStrategy stratégie de copie
+ */
+public class DeltaCopyStrategy implements CopyStrategy {
+    // ATTRIBUTS
+
+    /**
+     * Taille par défaut à partir de laquelle un fichier est copié par
+     * différence : 64 Mio
+     */
+    public static final long DEFAULT_THRESHOLD = 64L << 20;
+
+    /**
+     * Taille par défaut d'un bloc : 64 Kio
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 << 10;
+
+    private static final int DIGEST_SIZE = 16;
+    private static final int BUFFER_BLOCKS = 16;
+
+    private final CopyStrategy fullCopyStrategy;
+    private long threshold;
+    private int blockSize;
+    private boolean inPlace;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur utilisant le seuil et la taille de bloc par défaut
+     * @param fullCopyStrategy stratégie de copie des fichiers sous le seuil
+     * ou absents de la destination
+     */
+    public DeltaCopyStrategy(CopyStrategy fullCopyStrategy) {
+        this.fullCopyStrategy = fullCopyStrategy;
+        this.threshold = DEFAULT_THRESHOLD;
+        this.blockSize = DEFAULT_BLOCK_SIZE;
+    }
+
+    // COMMANDES
+
+    /**
+     * Défini la taille à partir de laquelle un fichier est copié par
+     * différence
+     * @param threshold taille en octets
+     */
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Défini la taille des blocs comparés
+     * @param blockSize taille en octets, strictement positive
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(
+                    "block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Active ou désactive la réécriture en place des seules zones modifiées
+     * lorsque les blocs repris n'ont pas changé de position. Un lecteur peut
+     * alors voir la destination en cours de modification.
+     * @param inPlace {@code true} pour réécrire la destination en place
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    @Override
+    public long copy(Path source, Path destination, long size,
+            FileTime lastModified, WriteCommitter committer) throws IOException {
+        long length = size >= 0 ? size : Files.size(source);
+        long previousLength;
+        try {
+            previousLength = Files.size(destination);
+        } catch (NoSuchFileException exception) {
+            return fullCopyStrategy.copy(source, destination, size,
+                    lastModified, committer);
+        }
+        if (length < threshold || previousLength < blockSize
+                || previousLength / blockSize > Integer.MAX_VALUE / DIGEST_SIZE) {
+            return fullCopyStrategy.copy(source, destination, size,
+                    lastModified, committer);
+        }
+        Signature signature = signatureOf(destination, previousLength);
+        List<long[]> instructions = match(source, signature);
+        long literal = 0;
+        boolean aligned = true;
+        for (long[] instruction : instructions) {
+            if (instruction[0] < 0) {
+                literal += instruction[2];
+            } else if (instruction[0] != instruction[1]) {
+                aligned = false;
+            }
+        }
+        if (inPlace && aligned && !isLinked(destination)) {
+            applyInPlace(source, destination, length, instructions);
+            committer.publishInPlace(destination, lastModified);
+        } else {
+            Path temporary = rebuild(source, destination, instructions);
+            committer.publish(temporary, destination, lastModified);
+        }
+        System.out.println("delta copy of " + source + ": " + literal
+                + " of " + length + " bytes transferred");
+        return length;
+    }
+
+    // OUTILS
+
+    /**
+     * Indique si un fichier a plusieurs liens physiques
+     * @param file chemin du fichier
+     * @return {@code true} si le fichier a plusieurs liens, {@code false} s'il
+     * n'en a qu'un ou si le système de fichiers ne l'indique pas
+     */
+    private static boolean isLinked(Path file) {
+        try {
+            return ((Number) Files.getAttribute(file, "unix:nlink")).intValue() > 1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Calcule la signature de la destination : somme faible et empreinte de
+     * chacun de ses blocs complets
+     * @param destination chemin de la version précédente du fichier
+     * @param length taille de la destination
+     * @return signature de la destination
+     * @throws IOException exception levée en cas d'erreur de lecture
+     */
+    private Signature signatureOf(Path destination, long length) throws IOException {
+        int blocks = (int) (length / blockSize);
+        Signature signature = new Signature(blocks);
+        MessageDigest digest = md5();
+        byte[] block = new byte[blockSize];
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            for (int index = 0; index < blocks; index++) {
+                buffer.clear();
+                long position = (long) index * blockSize;
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("destination truncated: " + destination);
+                    }
+                }
+                digest.update(block);
+                signature.add(index, weakChecksum(block, 0, blockSize),
+                        digest.digest());
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Parcourt la source avec une fenêtre glissante et produit la suite
+     * d'instructions la reconstruisant : reprise d'un bloc de la destination
+     * {@code {position dans la destination, position dans la source, taille}}
+     * ou copie depuis la source {@code {-1, position dans la source, taille}}
+     * @param source chemin du fichier source
+     * @param signature signature de la destination
+     * @return instructions dans l'ordre de la source
+     * @throws IOException exception levée en cas d'erreur de lecture
+     */
+    private List<long[]> match(Path source, Signature signature) throws IOException {
+        List<long[]> instructions = new ArrayList<>();
+        MessageDigest digest = md5();
+        byte[] buffer = new byte[blockSize * BUFFER_BLOCKS];
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long bufferStart = 0;
+            int bufferLength = 0;
+            int offset = 0;
+            long literalStart = 0;
+            boolean rolling = false;
+            int weak = 0;
+            boolean eof = false;
+            while (true) {
+                if (offset + blockSize >= bufferLength && !eof) {
+                    // décalage de la fenêtre au début du tampon, avec l'octet
+                    // qui la précède s'il doit en sortir, puis lecture
+                    int kept = rolling ? 1 : 0;
+                    int shift = offset - kept;
+                    System.arraycopy(buffer, shift, buffer, 0, bufferLength - shift);
+                    bufferStart += shift;
+                    bufferLength -= shift;
+                    offset = kept;
+                    ByteBuffer wrapper = ByteBuffer.wrap(buffer, bufferLength,
+                            buffer.length - bufferLength);
+                    while (wrapper.hasRemaining()) {
+                        if (channel.read(wrapper) < 0) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    bufferLength = wrapper.position();
+                }
+                if (offset + blockSize > bufferLength) {
+                    break;
+                }
+                if (rolling) {
+                    weak = roll(weak, buffer[offset - 1], buffer[offset + blockSize - 1]);
+                } else {
+                    weak = weakChecksum(buffer, offset, blockSize);
+                    rolling = true;
+                }
+                long position = bufferStart + offset;
+                int block = signature.find(weak, buffer, offset, blockSize, digest,
+                        position % blockSize == 0 ? position / blockSize : -1);
+                if (block >= 0) {
+                    appendLiteral(instructions, literalStart, position);
+                    appendBlock(instructions, (long) block * blockSize, position);
+                    offset += blockSize;
+                    literalStart = position + blockSize;
+                    rolling = false;
+                } else {
+                    offset++;
+                }
+            }
+            appendLiteral(instructions, literalStart, bufferStart + bufferLength);
+        }
+        return instructions;
+    }
+
+    /**
+     * Ajoute une copie depuis la source si la zone n'est pas vide
+     */
+    private static void appendLiteral(List<long[]> instructions, long start, long end) {
+        if (end > start) {
+            instructions.add(new long[] {-1, start, end - start});
+        }
+    }
+
+    /**
+     * Ajoute la reprise d'un bloc de la destination, fusionnée avec la
+     * précédente si les deux blocs se suivent des deux côtés
+     */
+    private void appendBlock(List<long[]> instructions, long from, long position) {
+        if (!instructions.isEmpty()) {
+            long[] last = instructions.get(instructions.size() - 1);
+            if (last[0] >= 0 && last[0] + last[2] == from
+                    && last[1] + last[2] == position) {
+                last[2] += blockSize;
+                return;
+            }
+        }
+        instructions.add(new long[] {from, position, blockSize});
+    }
+
+    /**
+     * Réécrit en place les zones modifiées de la destination, dont tous les
+     * blocs repris sont à leur position d'origine, puis l'ajuste à la taille
+     * de la source
+     */
+    private static void applyInPlace(Path source, Path destination, long length,
+            List<long[]> instructions) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+            for (long[] instruction : instructions) {
+                if (instruction[0] < 0) {
+                    out.position(instruction[1]);
+                    transfer(in, instruction[1], instruction[2], out);
+                }
+            }
+            out.truncate(length);
+        }
+    }
+
+    /**
+     * Reconstruit la source dans un fichier temporaire voisin à partir des
+     * blocs de la destination et des zones copiées depuis la source
+     * @return chemin du fichier temporaire, à publier à la place de la
+     * destination
+     */
+    private static Path rebuild(Path source, Path destination,
+            List<long[]> instructions) throws IOException {
+        Path temporary = WriteCommitter.temporaryOf(destination);
+        boolean complete = false;
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel previous = FileChannel.open(destination, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (long[] instruction : instructions) {
+                    if (instruction[0] < 0) {
+                        transfer(in, instruction[1], instruction[2], out);
+                    } else {
+                        transfer(previous, instruction[0], instruction[2], out);
+                    }
+                }
+            }
+            complete = true;
+            return temporary;
+        } finally {
+            if (!complete) {
+                WriteCommitter.discard(temporary);
+            }
+        }
+    }
+
+    /**
+     * Copie une zone d'un fichier à la position courante d'un autre
+     */
+    private static void transfer(FileChannel in, long position, long count,
+            FileChannel out) throws IOException {
+        long copied = 0;
+        while (copied < count) {
+            long transferred = in.transferTo(position + copied, count - copied, out);
+            if (transferred <= 0) {
+                throw new IOException("file truncated during delta copy");
+            }
+            copied += transferred;
+        }
+    }
+
+    /**
+     * Calcule la somme de contrôle faible d'une fenêtre, celle de rsync :
+     * somme des octets et somme pondérée par leur position, sur 16 bits
+     * chacune
+     */
+    private static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int value = data[offset + i] & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    /**
+     * Fait glisser la somme faible d'un octet
+     * @param weak somme de la fenêtre précédente
+     * @param removed octet sortant de la fenêtre
+     * @param added octet entrant dans la fenêtre
+     * @return somme de la nouvelle fenêtre
+     */
+    private int roll(int weak, byte removed, byte added) {
+        int out = removed & 0xff;
+        int a = ((weak & 0xffff) - out + (added & 0xff)) & 0xffff;
+        int b = ((weak >>> 16) - blockSize * out + a) & 0xffff;
+        return a | (b << 16);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Signature de la destination : blocs indexés par somme faible, les blocs
+     * de même somme étant chaînés, et empreintes stockées à la suite. Une
+     * table de bits indexée par les bits de poids faible des sommes écarte
+     * sans recherche la plupart des fenêtres sans correspondance.
+     */
+    private static class Signature {
+        private static final int FILTER_BITS = 20;
+
+        private final long[] filter;
+        private final Map<Integer, Integer> firstBlock;
+        private final int[] nextBlock;
+        private final byte[] digests;
+
+        Signature(int blocks) {
+            this.filter = new long[(1 << FILTER_BITS) / Long.SIZE];
+            this.firstBlock = new HashMap<>();
+            this.nextBlock = new int[blocks];
+            this.digests = new byte[blocks * DIGEST_SIZE];
+        }
+
+        void add(int block, int weak, byte[] digest) {
+            int bit = mix(weak);
+            filter[bit >>> 6] |= 1L << bit;
+            Integer previous = firstBlock.put(weak, block);
+            nextBlock[block] = previous != null ? previous : -1;
+            System.arraycopy(digest, 0, digests, block * DIGEST_SIZE, DIGEST_SIZE);
+        }
+
+        /**
+         * Recherche un bloc identique à la fenêtre donnée, l'empreinte n'étant
+         * calculée que si la somme faible correspond. Parmi des blocs
+         * identiques, celui situé à la même position que la fenêtre est
+         * préféré, pour pouvoir réécrire la destination en place.
+         * @param preferred indice du bloc à la position de la fenêtre,
+         * {@code -1} si la fenêtre n'est pas alignée sur un bloc
+         * @return indice du bloc, {@code -1} si aucun
+         */
+        int find(int weak, byte[] data, int offset, int length,
+                MessageDigest digest, long preferred) {
+            int bit = mix(weak);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return -1;
+            }
+            Integer block = firstBlock.get(weak);
+            if (block == null) {
+                return -1;
+            }
+            digest.update(data, offset, length);
+            byte[] strong = digest.digest();
+            int found = -1;
+            for (int candidate = block; candidate >= 0; candidate = nextBlock[candidate]) {
+                if (Arrays.equals(strong, 0, DIGEST_SIZE, digests,
+                        candidate * DIGEST_SIZE, (candidate + 1) * DIGEST_SIZE)) {
+                    if (candidate == preferred) {
+                        return candidate;
+                    }
+                    if (found < 0) {
+                        found = candidate;
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Répartit les sommes faibles, dont les deux moitiés sont peu
+         * dispersées, sur la table de bits
+         */
+        private static int mix(int weak) {
+            return (weak * 0x9E3779B9) >>> (Integer.SIZE - FILTER_BITS);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package Strategy;
+
+/**
+ * Niveau de durabilité des copies : moment où le contenu d'une copie et son
+ * entrée dans le répertoire sont écrits sur le support de stockage plutôt
+ * que laissés dans le cache du système.
+ *
+ * @see WriteCommitter publication des copies
+ */
+public enum Durability {
+    /**
+     * Aucune écriture forcée : le système écrit les copies quand il le
+     * souhaite, une panne peut perdre les copies récentes
+     */
+    NONE,
+
+    /**
+     * Écriture forcée par lots : les copies terminées d'un lot sont forcées
+     * simultanément, puis renommées, chaque répertoire concerné n'étant
+     * forcé qu'une fois par lot. Chaque fichier reste forcé une fois, comme
+     * avec {@link #PER_FILE} : seuls les forçages de répertoires sont
+     * économisés. Un système de fichiers journalisé peut regrouper les
+     * forçages simultanés en une même validation de son journal, un lot
+     * coûtant alors à peu près une attente du support au lieu d'une par
+     * fichier ; sans ce regroupement, le gain se limite au recouvrement des
+     * attentes. La tâche de transfert qui complète un lot attend sa
+     * publication.
+     */
+    BATCHED,
+
+    /**
+     * Écriture forcée de chaque copie avant son renommage, puis de son
+     * répertoire
+     */
+    PER_FILE
+}
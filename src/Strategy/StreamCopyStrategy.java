@@ -0,0 +1,31 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Copie par {@link Files#copy(Path, Path, java.nio.file.CopyOption...)},
+ * qui laisse le JDK choisir le mécanisme de copie, vers un fichier
+ * temporaire publié ensuite
+ */
+public class StreamCopyStrategy implements CopyStrategy {
+    // COMMANDES
+
+    @Override
+    public long copy(Path source, Path destination, long size,
+            FileTime lastModified, WriteCommitter committer) throws IOException {
+        Path temporary = WriteCommitter.temporaryOf(destination);
+        try {
+            Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            WriteCommitter.discard(temporary);
+            throw exception;
+        }
+        long copied = size >= 0 ? size : Files.size(temporary);
+        committer.publish(temporary, destination, lastModified);
+        return copied;
+    }
+}
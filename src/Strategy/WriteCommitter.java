@@ -0,0 +1,385 @@
+package Strategy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Publication des copies écrites dans un fichier temporaire voisin de leur
+ * destination : la date de modification est appliquée au fichier temporaire,
+ * qui remplace ensuite la destination par un renommage atomique. Un lecteur
+ * ne voit ainsi jamais une copie partiellement écrite, seulement l'ancienne
+ * version ou la nouvelle.
+ * Selon le niveau de {@link Durability}, chaque copie est forcée sur le
+ * support avant son renommage puis son répertoire après celui-ci, ou les
+ * copies terminées sont regroupées : les fichiers d'un lot sont forcés
+ * simultanément, renommés, puis chacun de ses répertoires n'est forcé
+ * qu'une fois. Le
+ * dernier lot, incomplet, est publié par {@link #flush()}. Une copie mise en
+ * lot n'apparaît à sa destination qu'après la publication de son lot.
+ * Une action peut être associée à une copie par {@link #notifying(Runnable)}
+ * : elle n'est appelée qu'une fois la copie publiée, et jamais si sa
+ * publication échoue, afin de n'enregistrer la synchronisation d'un fichier
+ * qu'une fois sa copie en place.
+ *
+ * @see Durability niveau de durabilité
+ */
+public class WriteCommitter {
+    // ATTRIBUTS
+
+    /**
+     * Nombre par défaut de copies publiées ensemble en mode
+     * {@link Durability#BATCHED}
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Suffixe des fichiers temporaires et des sauvegardes en cours écrits
+     * par l'outil, propre à celui-ci pour ne jamais écarter un fichier de
+     * l'utilisateur de la synchronisation
+     */
+    public static final String TEMPORARY_SUFFIX = ".jsync-part";
+
+    private final Durability durability;
+    private final WriteCommitter batch;
+    private final Runnable published;
+    private int batchSize;
+    private List<Pending> pending;
+
+    // CONSTRUCTEURS
+
+    /**
+     * Constructeur utilisant la taille de lot par défaut
+     * @param durability niveau de durabilité des copies
+     */
+    public WriteCommitter(Durability durability) {
+        this.durability = durability;
+        this.batch = this;
+        this.published = null;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.pending = new ArrayList<>();
+    }
+
+    /**
+     * Constructeur d'un publicateur partageant le lot d'un autre, dont les
+     * copies appellent une action une fois publiées
+     * @param batch publicateur détenant le lot en cours
+     * @param published action appelée après la publication
+     */
+    private WriteCommitter(WriteCommitter batch, Runnable published) {
+        this.durability = batch.durability;
+        this.batch = batch;
+        this.published = published;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne le niveau de durabilité des copies
+     * @return niveau de durabilité
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Retourne le chemin du fichier temporaire dans lequel est écrite une
+     * copie avant sa publication
+     * @param destination chemin de la copie
+     * @return fichier caché voisin de la destination
+     * @see #isTemporary(Path) fichier à ne pas synchroniser
+     */
+    public static Path temporaryOf(Path destination) {
+        return destination.resolveSibling(
+                "." + destination.getFileName() + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Indique si un chemin désigne un fichier temporaire, le fichier de
+     * reprise d'une copie par segments ou une sauvegarde en cours, à ne pas
+     * synchroniser
+     * @param path chemin à tester
+     * @return {@code true} si le chemin est une écriture en cours de l'outil
+     */
+    public static boolean isTemporary(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(".")
+                && (name.endsWith(TEMPORARY_SUFFIX)
+                        || name.endsWith(TEMPORARY_SUFFIX + ChunkCheckpoint.SUFFIX));
+    }
+
+    /**
+     * Supprime le fichier temporaire d'une copie abandonnée ainsi que son
+     * éventuel fichier de reprise, qui ne décrit plus son contenu
+     * @param temporary chemin du fichier temporaire
+     * @throws IOException exception levée en cas d'erreur de suppression
+     * @see ChunkCheckpoint fichier de reprise
+     */
+    public static void discard(Path temporary) throws IOException {
+        Files.deleteIfExists(temporary);
+        ChunkCheckpoint.delete(temporary);
+    }
+
+    /**
+     * Retourne un publicateur partageant le lot de celui-ci, dont chaque
+     * copie appelle l'action donnée une fois publiée à sa destination :
+     * aussitôt, ou lors de la publication de son lot. L'action n'est pas
+     * appelée si la publication échoue.
+     * @param published action appelée après la publication
+     * @return publicateur de la copie
+     */
+    public WriteCommitter notifying(Runnable published) {
+        return new WriteCommitter(batch, published);
+    }
+
+    // COMMANDES
+
+    /**
+     * Défini le nombre de copies publiées ensemble en mode
+     * {@link Durability#BATCHED}
+     * @param batchSize nombre de copies, strictement positif
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "batch size must be positive: " + batchSize);
+        }
+        batch.batchSize = batchSize;
+    }
+
+    /**
+     * Publie une copie écrite dans un fichier temporaire, éventuellement
+     * depuis plusieurs tâches simultanées
+     * @param temporary chemin du fichier temporaire complet
+     * @param destination chemin de la copie
+     * @param lastModified date de modification de la copie
+     * @throws IOException exception levée si la copie ne peut être publiée,
+     * le fichier temporaire est alors supprimé avec son fichier de reprise
+     */
+    public void publish(Path temporary, Path destination, FileTime lastModified)
+            throws IOException {
+        boolean handled = false;
+        try {
+            Files.setLastModifiedTime(temporary, lastModified);
+            switch (durability) {
+                case NONE -> {
+                    move(temporary, destination);
+                    notifyPublished();
+                }
+                case PER_FILE -> {
+                    force(temporary);
+                    move(temporary, destination);
+                    forceDirectory(destination.getParent());
+                    notifyPublished();
+                }
+                case BATCHED -> batch.enqueue(new Pending(temporary, destination, published));
+            }
+            handled = true;
+        } finally {
+            if (!handled) {
+                discard(temporary);
+            }
+        }
+    }
+
+    /**
+     * Publie une copie réécrite en place, sans fichier temporaire : seules
+     * sa date et, selon le niveau de durabilité, l'écriture forcée de son
+     * contenu restent à faire
+     * @param destination chemin de la copie
+     * @param lastModified date de modification de la copie
+     * @throws IOException exception levée si la copie ne peut être publiée
+     */
+    public void publishInPlace(Path destination, FileTime lastModified)
+            throws IOException {
+        Files.setLastModifiedTime(destination, lastModified);
+        switch (durability) {
+            case NONE -> notifyPublished();
+            case PER_FILE -> {
+                force(destination);
+                notifyPublished();
+            }
+            case BATCHED -> batch.enqueue(new Pending(null, destination, published));
+        }
+    }
+
+    /**
+     * Publie les copies en attente d'un lot incomplet
+     */
+    public void flush() {
+        List<Pending> copies;
+        synchronized (batch) {
+            copies = batch.pending;
+            batch.pending = new ArrayList<>();
+        }
+        commit(copies);
+    }
+
+    // OUTILS
+
+    /**
+     * Ajoute une copie au lot en cours et publie le lot s'il est complet,
+     * dans la tâche qui l'a complété
+     * @param copy copie en attente
+     */
+    private void enqueue(Pending copy) {
+        List<Pending> copies = null;
+        synchronized (this) {
+            pending.add(copy);
+            if (pending.size() >= batchSize) {
+                copies = pending;
+                pending = new ArrayList<>();
+            }
+        }
+        if (copies != null) {
+            commit(copies);
+        }
+    }
+
+    private void notifyPublished() {
+        if (published != null) {
+            published.run();
+        }
+    }
+
+    /**
+     * Publie un lot : ses copies sont forcées simultanément, puis renommées,
+     * et chaque répertoire concerné forcé une seule fois. Les actions des
+     * copies publiées sont ensuite appelées. Une copie qui ne peut être
+     * publiée est signalée sans empêcher la publication des autres, et son
+     * action n'est pas appelée.
+     * @param batch copies en attente
+     */
+    private static void commit(List<Pending> batch) {
+        Set<Path> directories = new LinkedHashSet<>();
+        List<Runnable> actions = new ArrayList<>();
+        for (Pending copy : forceAll(batch)) {
+            try {
+                if (copy.temporary() != null) {
+                    move(copy.temporary(), copy.destination());
+                    directories.add(copy.destination().getParent());
+                }
+                if (copy.published() != null) {
+                    actions.add(copy.published());
+                }
+            } catch (IOException exception) {
+                abandon(copy, exception);
+            }
+        }
+        for (Path directory : directories) {
+            forceDirectory(directory);
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Force simultanément, chacune dans un thread virtuel, l'écriture des
+     * copies d'un lot : le système de fichiers peut alors regrouper leurs
+     * écritures, et la tâche qui publie le lot n'attend que la plus lente
+     * d'entre elles
+     * @param batch copies en attente
+     * @return copies forcées, dans l'ordre du lot
+     */
+    private static List<Pending> forceAll(List<Pending> batch) {
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Pending copy : batch) {
+                futures.add(executor.submit(() -> {
+                    force(copy.written());
+                    return null;
+                }));
+            }
+        }
+        List<Pending> forced = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                futures.get(i).get();
+                forced.add(batch.get(i));
+            } catch (ExecutionException exception) {
+                abandon(batch.get(i), exception.getCause());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                abandon(batch.get(i), exception);
+            }
+        }
+        return forced;
+    }
+
+    /**
+     * Signale une copie qui ne peut être publiée et supprime son fichier
+     * temporaire
+     * @param copy copie abandonnée
+     * @param cause erreur rencontrée
+     */
+    private static void abandon(Pending copy, Throwable cause) {
+        System.out.println("error with the commit of file "
+                + copy.destination() + ": " + cause.getMessage());
+        try {
+            if (copy.temporary() != null) {
+                discard(copy.temporary());
+            }
+        } catch (IOException ignored) {
+            // le fichier temporaire sera ignoré puis remplacé
+        }
+    }
+
+    private static void move(Path temporary, Path destination) throws IOException {
+        Files.move(temporary, destination,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Force l'écriture du contenu et des attributs d'un fichier sur le
+     * support
+     * @param file chemin du fichier
+     * @throws IOException exception levée en cas d'erreur d'écriture
+     */
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Force l'écriture des entrées d'un répertoire, donc des renommages
+     * qu'il a subis, si le système le permet
+     * @param directory chemin du répertoire
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException exception) {
+            // répertoire ne pouvant être ouvert, par exemple sous Windows
+        }
+    }
+
+    /**
+     * Copie en attente de publication
+     * @param temporary fichier temporaire à renommer, {@code null} pour une
+     * copie réécrite en place
+     * @param destination chemin de la copie
+     * @param published action appelée après la publication, {@code null}
+     * si aucune
+     */
+    private record Pending(Path temporary, Path destination, Runnable published) {
+        /**
+         * @return fichier écrit par la copie, à forcer
+         */
+        Path written() {
+            return temporary != null ? temporary : destination;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package Visitor;
+
+import Adapter.FileSystem;
+import Composite.DirectoryComposite;
+import Composite.FileComponent;
+import Composite.FileLeaf;
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Comparaison des contenus d'un répertoire source et de son équivalent en
+ * destination. Les deux listes d'enfants, triées par nom, sont parcourues
+ * simultanément en une seule passe linéaire (jointure par fusion) et chaque
+ * entrée est classée selon sa présence de chaque côté et, pour un fichier
+ * présent des deux côtés, selon ses dates de modification comparées à celle
+ * de sa dernière synchronisation.
+ * En mode empreinte, un fichier dont la date a changé n'est considéré
+ * modifié que si l'empreinte de son contenu diffère de celle enregistrée
+ * lors de sa dernière synchronisation, et deux fichiers de même contenu ne
+ * sont jamais en conflit. Les empreintes ne sont recalculées que pour les
+ * fichiers dont la taille ou la date a changé depuis leur enregistrement.
+ *
+ * @see DirectoryComposite#BY_NAME ordre des enfants
+ * @see ContentHash empreinte enregistrée
+ * @see Registry registre de synchronisation
+ */
+public class DirectoryDiff {
+    // TYPES
+
+    /**
+     * Classement d'une entrée
+     */
+    public enum Change {
+        /** présente uniquement dans la source */
+        SOURCE_ONLY,
+        /** présente uniquement dans la destination */
+        DESTINATION_ONLY,
+        /** fichier modifié dans la source depuis sa dernière synchronisation */
+        SOURCE_CHANGED,
+        /** fichier modifié dans la destination depuis sa dernière synchronisation */
+        DESTINATION_CHANGED,
+        /** fichier modifié des deux côtés : conflit */
+        BOTH_CHANGED,
+        /**
+         * fichier inchangé des deux côtés, ou répertoire présent des deux
+         * côtés dont le contenu reste à comparer
+         */
+        UNCHANGED,
+        /** fichier d'un côté, répertoire de l'autre */
+        TYPE_MISMATCH
+    }
+
+    /**
+     * Action appliquée à chaque entrée comparée
+     */
+    public interface Handler {
+        /**
+         * Traite une entrée comparée. Les composants ne sont valables que
+         * pendant l'appel.
+         * @param change classement de l'entrée
+         * @param source entrée source, {@code null} si absente
+         * @param destination entrée destination, {@code null} si absente
+         */
+        void handle(Change change, FileComponent source, FileComponent destination);
+    }
+
+    // ATTRIBUTS
+
+    private final Path source;
+    private final Registry registry;
+    private final FileSystem fileSystem;
+    private boolean checksum;
+    private String sourceHash;
+    private String destinationHash;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param source chemin du répertoire source, racine des chemins relatifs
+     * du registre
+     * @param registry registre des dates de synchronisation
+     * @param fileSystem système de fichiers, pour le calcul des empreintes
+     */
+    public DirectoryDiff(Path source, Registry registry, FileSystem fileSystem) {
+        this.source = source;
+        this.registry = registry;
+        this.fileSystem = fileSystem;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Retourne l'empreinte du fichier source de la dernière entrée classée,
+     * valable pendant son traitement
+     * @return empreinte, {@code null} si elle n'a pas été calculée
+     */
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * Retourne l'empreinte du fichier destination de la dernière entrée
+     * classée, valable pendant son traitement
+     * @return empreinte, {@code null} si elle n'a pas été calculée
+     */
+    public String getDestinationHash() {
+        return destinationHash;
+    }
+
+    /**
+     * Classe une entrée présente des deux côtés
+     * @param sourceEntry entrée source
+     * @param destinationEntry entrée destination
+     * @return classement de l'entrée
+     */
+    public Change classify(FileComponent sourceEntry, FileComponent destinationEntry) {
+        sourceHash = null;
+        destinationHash = null;
+        boolean sourceDirectory = sourceEntry instanceof DirectoryComposite;
+        boolean destinationDirectory = destinationEntry instanceof DirectoryComposite;
+        if (sourceDirectory != destinationDirectory) {
+            return Change.TYPE_MISMATCH;
+        }
+        if (sourceDirectory) {
+            return Change.UNCHANGED;
+        }
+        String relative = source.relativize(sourceEntry.getPath()).toString();
+        Date lastSync = registry.getLastSyncDate(relative);
+        boolean sourceModified = lastSync == null
+                || sourceEntry.getLastModified().after(lastSync);
+        boolean destinationModified = lastSync != null
+                && destinationEntry.getLastModified().after(lastSync);
+        if (checksum && (sourceModified || destinationModified)) {
+            Change change = classifyByContent(relative,
+                    (FileLeaf) sourceEntry, (FileLeaf) destinationEntry);
+            if (change != null) {
+                return change;
+            }
+        }
+        return changeOf(sourceModified, destinationModified);
+    }
+
+    // COMMANDES
+
+    /**
+     * Active ou désactive le mode empreinte
+     * @param checksum {@code true} pour comparer le contenu des fichiers dont
+     * la date a changé
+     */
+    public void setChecksum(boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Compare les enfants d'un répertoire source et de son équivalent en
+     * destination, triés par nom, et traite chaque entrée dans l'ordre des
+     * noms
+     * @param sourceChildren enfants du répertoire source
+     * @param destinationChildren enfants du répertoire destination
+     * @param handler action appliquée à chaque entrée
+     * @return nombre d'entrées distinctes des deux côtés
+     */
+    public int compare(List<FileComponent> sourceChildren,
+            List<FileComponent> destinationChildren, Handler handler) {
+        Iterator<FileComponent> sourceIterator = sourceChildren.iterator();
+        Iterator<FileComponent> destinationIterator = destinationChildren.iterator();
+        FileComponent sourceEntry = next(sourceIterator);
+        FileComponent destinationEntry = next(destinationIterator);
+        int entries = 0;
+        while (sourceEntry != null || destinationEntry != null) {
+            int order;
+            if (sourceEntry == null) {
+                order = 1;
+            } else if (destinationEntry == null) {
+                order = -1;
+            } else {
+                order = DirectoryComposite.BY_NAME.compare(sourceEntry, destinationEntry);
+            }
+            if (order != 0) {
+                sourceHash = null;
+                destinationHash = null;
+            }
+            if (order < 0) {
+                handler.handle(Change.SOURCE_ONLY, sourceEntry, null);
+                sourceEntry = next(sourceIterator);
+            } else if (order > 0) {
+                handler.handle(Change.DESTINATION_ONLY, null, destinationEntry);
+                destinationEntry = next(destinationIterator);
+            } else {
+                handler.handle(classify(sourceEntry, destinationEntry),
+                        sourceEntry, destinationEntry);
+                sourceEntry = next(sourceIterator);
+                destinationEntry = next(destinationIterator);
+            }
+            entries++;
+        }
+        return entries;
+    }
+
+    // OUTILS
+
+    /**
+     * Classe une entrée dont la date a changé selon l'empreinte de son
+     * contenu
+     * @param relative chemin relatif du fichier
+     * @param sourceEntry fichier source
+     * @param destinationEntry fichier destination
+     * @return classement de l'entrée, {@code null} si le contenu ne permet
+     * pas de conclure et que seules les dates comptent
+     */
+    private Change classifyByContent(String relative,
+            FileLeaf sourceEntry, FileLeaf destinationEntry) {
+        ContentHash recorded = registry.getContentHash(relative);
+        long sourceModified = sourceEntry.getLastModified().getTime();
+        long destinationModified = destinationEntry.getLastModified().getTime();
+        sourceHash = recorded != null
+                && recorded.matchesSource(sourceEntry.getSize(), sourceModified)
+                ? recorded.getHash()
+                : fileSystem.getContentHash(sourceEntry.getPath());
+        destinationHash = recorded != null
+                && recorded.matchesDestination(destinationEntry.getSize(), destinationModified)
+                ? recorded.getHash()
+                : fileSystem.getContentHash(destinationEntry.getPath());
+        if (sourceHash == null || destinationHash == null) {
+            return null;
+        }
+        if (sourceHash.equals(destinationHash)) {
+            return Change.UNCHANGED;
+        }
+        if (recorded == null) {
+            return null;
+        }
+        return changeOf(!sourceHash.equals(recorded.getHash()),
+                !destinationHash.equals(recorded.getHash()));
+    }
+
+    /**
+     * Classe une entrée présente des deux côtés selon le côté modifié
+     * @param sourceModified {@code true} si le fichier source a été modifié
+     * @param destinationModified {@code true} si le fichier destination a été
+     * modifié
+     * @return classement de l'entrée
+     */
+    private static Change changeOf(boolean sourceModified, boolean destinationModified) {
+        if (sourceModified && destinationModified) {
+            return Change.BOTH_CHANGED;
+        }
+        if (sourceModified) {
+            return Change.SOURCE_CHANGED;
+        }
+        if (destinationModified) {
+            return Change.DESTINATION_CHANGED;
+        }
+        return Change.UNCHANGED;
+    }
+
+    private static FileComponent next(Iterator<FileComponent> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
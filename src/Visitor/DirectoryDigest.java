@@ -0,0 +1,240 @@
+package Visitor;
+
+import Adapter.FileSystem;
+import Singleton.ContentHash;
+import Singleton.DirectoryState;
+import Singleton.Registry;
+import Strategy.WriteCommitter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Calcul de l'empreinte de Merkle d'une arborescence d'un côté de la
+ * synchronisation. L'empreinte d'un répertoire combine l'empreinte SHA-256
+ * de ses entrées directes triées par nom (nom, taille et empreinte du contenu
+ * de chaque fichier, ou sa date de modification si son empreinte n'est pas
+ * connue, nom de chaque sous-répertoire) avec les empreintes de ses
+ * sous-répertoires.
+ * Un répertoire dont la date de modification est celle enregistrée lors de
+ * sa dernière synchronisation n'est pas listé : l'empreinte enregistrée de
+ * ses entrées directes est réutilisée et ses sous-répertoires, connus du
+ * registre, sont examinés à leur tour. Une arborescence inchangée est ainsi
+ * vérifiée avec une seule lecture d'attributs par répertoire, sans lister
+ * aucun répertoire ni lire aucun fichier.
+ *
+ * @see DirectoryState état enregistré d'un répertoire
+ */
+public class DirectoryDigest {
+    // TYPES
+
+    /**
+     * Empreintes d'un répertoire
+     * @param entries empreinte des entrées directes du répertoire
+     * @param tree empreinte de l'arborescence
+     * @param complete {@code true} si chaque sous-répertoire a un état
+     * enregistré, condition pour que l'empreinte des entrées directes puisse
+     * être réutilisée
+     */
+    public record Digest(String entries, String tree, boolean complete) {
+    }
+
+    // ATTRIBUTS
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final FileSystem fileSystem;
+    private final Registry registry;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param fileSystem système de fichiers
+     * @param registry registre des états de répertoires et des empreintes
+     */
+    public DirectoryDigest(FileSystem fileSystem, Registry registry) {
+        this.fileSystem = fileSystem;
+        this.registry = registry;
+    }
+
+    // REQUÊTES
+
+    /**
+     * Calcule l'empreinte actuelle d'un répertoire d'un côté de la
+     * synchronisation, en examinant toute son arborescence
+     * @param directory chemin du répertoire
+     * @param relative chemin relatif du répertoire dans le registre
+     * @param destinationSide {@code true} si le répertoire est du côté de la
+     * destination
+     * @return empreintes du répertoire, {@code null} s'il n'existe pas
+     */
+    public Digest compute(Path directory, Path relative, boolean destinationSide) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            return null;
+        }
+        return digestOf(directory, relative,
+                attributes.lastModifiedTime().toMillis(), destinationSide, true, false);
+    }
+
+    /**
+     * Calcule l'empreinte d'un répertoire qui vient d'être synchronisé, dont
+     * les sous-répertoires ont déjà été enregistrés : leurs empreintes
+     * enregistrées sont réutilisées tant que leur date n'a pas changé
+     * @param directory chemin du répertoire
+     * @param relative chemin relatif du répertoire dans le registre
+     * @param destinationSide {@code true} si le répertoire est du côté de la
+     * destination
+     * @param reuseEntries {@code true} si l'empreinte enregistrée des entrées
+     * directes peut être réutilisée, {@code false} pour les relister
+     * @return empreintes du répertoire, {@code null} s'il n'existe pas
+     */
+    public Digest update(Path directory, Path relative, boolean destinationSide,
+            boolean reuseEntries) {
+        BasicFileAttributes attributes = fileSystem.getAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            return null;
+        }
+        return digestOf(directory, relative,
+                attributes.lastModifiedTime().toMillis(), destinationSide,
+                reuseEntries, true);
+    }
+
+    // OUTILS
+
+    /**
+     * Calcule les empreintes d'un répertoire
+     * @param directory chemin du répertoire
+     * @param relative chemin relatif du répertoire
+     * @param modified date de modification actuelle du répertoire
+     * @param destinationSide côté du répertoire
+     * @param reuseEntries {@code true} pour réutiliser l'empreinte
+     * enregistrée des entrées directes si la date du répertoire n'a pas changé
+     * @param trustRecorded {@code true} pour réutiliser l'empreinte
+     * enregistrée des sous-répertoires dont la date n'a pas changé
+     * @return empreintes du répertoire
+     */
+    private Digest digestOf(Path directory, Path relative, long modified,
+            boolean destinationSide, boolean reuseEntries, boolean trustRecorded) {
+        DirectoryState state = registry.getDirectoryState(relative.toString());
+        String entries = null;
+        List<Subdirectory> subdirectories = new ArrayList<>();
+        boolean complete = true;
+        if (reuseEntries && state != null && state.getEntriesDigest() != null
+                && modified == recordedDate(state, destinationSide)) {
+            entries = state.getEntriesDigest();
+            for (String name : registry.getSubdirectories(relative.toString())) {
+                Path path = directory.resolve(name);
+                BasicFileAttributes attributes = fileSystem.getAttributes(path);
+                if (attributes == null || !attributes.isDirectory()) {
+                    // structure modifiée sans changer la date du répertoire
+                    entries = null;
+                    subdirectories.clear();
+                    break;
+                }
+                subdirectories.add(new Subdirectory(name, path,
+                        attributes.lastModifiedTime().toMillis()));
+            }
+        }
+        if (entries == null) {
+            MessageDigest entriesDigest = sha256();
+            List<Entry> listed = new ArrayList<>();
+            fileSystem.listFilesWithAttributes(directory, (path, attributes) -> {
+                if (!WriteCommitter.isTemporary(path)) {
+                    listed.add(new Entry(path.getFileName().toString(), path, attributes));
+                }
+            });
+            listed.sort(Comparator.comparing(Entry::name));
+            for (Entry entry : listed) {
+                BasicFileAttributes attributes = entry.attributes();
+                String line;
+                if (attributes.isDirectory()) {
+                    line = "D\0" + entry.name();
+                    subdirectories.add(new Subdirectory(entry.name(), entry.path(),
+                            attributes.lastModifiedTime().toMillis()));
+                    complete &= registry.getDirectoryState(
+                            relative.resolve(entry.name()).toString()) != null;
+                } else {
+                    line = fileLine(relative.resolve(entry.name()).toString(),
+                            entry.name(), attributes, destinationSide);
+                }
+                update(entriesDigest, line);
+            }
+            entries = HEX.formatHex(entriesDigest.digest());
+        }
+        MessageDigest treeDigest = sha256();
+        update(treeDigest, entries);
+        for (Subdirectory subdirectory : subdirectories) {
+            Path childRelative = relative.resolve(subdirectory.name());
+            String tree = null;
+            if (trustRecorded) {
+                DirectoryState childState = registry.getDirectoryState(childRelative.toString());
+                if (childState != null && childState.getDigest() != null
+                        && subdirectory.modified() == recordedDate(childState, destinationSide)) {
+                    tree = childState.getDigest();
+                }
+            }
+            if (tree == null) {
+                tree = digestOf(subdirectory.path(), childRelative, subdirectory.modified(),
+                        destinationSide, true, trustRecorded).tree();
+            }
+            update(treeDigest, "D\0" + subdirectory.name() + "\0" + tree);
+        }
+        return new Digest(entries, HEX.formatHex(treeDigest.digest()), complete);
+    }
+
+    /**
+     * Retourne la ligne d'un fichier dans l'empreinte des entrées directes :
+     * son empreinte de contenu si elle est connue pour sa taille et sa date
+     * actuelles, sinon sa date
+     */
+    private String fileLine(String relative, String name,
+            BasicFileAttributes attributes, boolean destinationSide) {
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        ContentHash hash = registry.getContentHash(relative);
+        boolean known = hash != null && (destinationSide
+                ? hash.matchesDestination(size, modified)
+                : hash.matchesSource(size, modified));
+        return known
+                ? "F\0" + name + "\0" + size + "\0" + hash.getHash()
+                : "T\0" + name + "\0" + size + "\0" + modified;
+    }
+
+    private static long recordedDate(DirectoryState state, boolean destinationSide) {
+        return destinationSide ? state.getDestinationModified() : state.getSourceModified();
+    }
+
+    private static void update(MessageDigest digest, String line) {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Entrée lue lors du listage d'un répertoire
+     */
+    private record Entry(String name, Path path, BasicFileAttributes attributes) {
+    }
+
+    /**
+     * Sous-répertoire à examiner, avec sa date de modification actuelle
+     */
+    private record Subdirectory(String name, Path path, long modified) {
+    }
+}
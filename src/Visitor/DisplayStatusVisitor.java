@@ -3,10 +3,13 @@ package Visitor;
 import Composite.DirectoryComposite;
 import Composite.FileComponent;
 import Composite.FileLeaf;
+import Singleton.DirectoryState;
 import Singleton.Registry;
 
 import java.nio.file.Path;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  *
@@ -54,8 +57,44 @@ public class DisplayStatusVisitor implements FileVisitor {
     @Override
     public void visitDirectory(DirectoryComposite directoryComposite) {
         System.out.println("Directory: " + directoryComposite.getPath());
+        String relative = source.relativize(directoryComposite.getPath()).toString();
+        Date lastSynchronization = registry.getLastSyncDateUnder(relative);
+        if (lastSynchronization != null) {
+            System.out.println("Last synchronization: " + lastSynchronization);
+        }
+        DirectoryState state = registry.getDirectoryState(relative);
+        if (state != null
+                && state.getSourceChildren() != directoryComposite.getChildren().size()) {
+            System.out.println("status: entries added or removed");
+            printRemoved(directoryComposite, relative);
+        }
         for (FileComponent fileComponent : directoryComposite.getChildren()) {
             fileComponent.accept(this);
         }
     }
+
+    // OUTIL
+
+    /**
+     * Affiche les fichiers synchronisés sous un répertoire dont l'entrée
+     * directe qui les contient n'existe plus ; les entrées toujours
+     * présentes sont examinées lors de leur propre visite
+     * @param directoryComposite répertoire source
+     * @param relative chemin relatif du répertoire
+     */
+    private void printRemoved(DirectoryComposite directoryComposite, String relative) {
+        Path directory = Path.of(relative);
+        Set<Path> children = new HashSet<>();
+        for (FileComponent child : directoryComposite.getChildren()) {
+            children.add(child.getPath().getFileName());
+        }
+        for (String path : registry.getPathsUnder(relative)) {
+            Path entry = relative.isEmpty()
+                    ? Path.of(path).getName(0)
+                    : Path.of(path).getName(directory.getNameCount());
+            if (!children.contains(entry)) {
+                System.out.println("removed: " + path);
+            }
+        }
+    }
 }
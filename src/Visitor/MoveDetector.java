@@ -0,0 +1,343 @@
+package Visitor;
+
+import Adapter.FileSystem;
+import Command.CopyOperation;
+import Command.CreateDirectoryOperation;
+import Command.DeduplicatedCopyOperation;
+import Command.LinkOperation;
+import Command.MoveOperation;
+import Command.RemoveDirectoryOperation;
+import Command.SyncPlan;
+import Composite.FileLeaf;
+import Singleton.ContentHash;
+import Singleton.Registry;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Détection des fichiers déplacés ou renommés dans la source, pour les
+ * déplacer dans la destination au lieu de les recopier.
+ * Les fichiers présents uniquement dans la source et ceux présents
+ * uniquement dans la destination sont mis de côté pendant le parcours, puis
+ * appariés une fois le parcours terminé par leur taille et leur date de
+ * modification, conservée par chaque copie. Un appariement est toujours
+ * confirmé par l'empreinte du contenu : celle du fichier de destination est
+ * lue dans le registre si elle correspond à sa taille et à sa date, et
+ * calculée sinon. Deux fichiers différents de même taille et de même date ne
+ * sont donc jamais appariés ; le nouveau fichier est alors copié.
+ * Un nouveau fichier source apparié à un fichier de destination absent de la
+ * source et connu du registre, donc synchronisé puis déplacé, est obtenu
+ * en renommant ce fichier. Un nouveau fichier volumineux identique à un
+ * fichier toujours présent des deux côtés, trouvé par sa taille et sa date
+ * dans l'index des empreintes du registre puis dont l'empreinte est
+ * comparée, est obtenu par un
+ * lien physique : un lien rend les deux chemins indissociables, une erreur
+ * d'appariement n'y serait jamais corrigée. Les autres fichiers sont
+ * copiés. Les répertoires de destination vidés par des déplacements sont
+ * supprimés plutôt que recréés dans la source.
+ * L'identifiant de fichier du système ({@code fileKey}) n'est pas utilisé :
+ * il ne relie pas un fichier source à sa copie en destination.
+ *
+ * @see MoveOperation déplacement
+ * @see LinkOperation lien physique
+ */
+public class MoveDetector {
+    // ATTRIBUTS
+
+    /**
+     * Taille à partir de laquelle un nouveau fichier est lié à un fichier de
+     * même contenu plutôt que copié : en deçà, la copie est peu coûteuse et
+     * évite de lier deux fichiers indépendants
+     */
+    public static final long LINK_THRESHOLD = 1024 * 1024;
+
+    private final Path source;
+    private final Path destination;
+    private final Registry registry;
+    private final FileSystem fileSystem;
+    private boolean deduplication;
+    private final List<FileLeaf> newFiles;
+    private final List<FileLeaf> missingFiles;
+    private final Map<Path, int[]> missingDirectories;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param source chemin du répertoire source
+     * @param destination chemin du répertoire destination
+     * @param registry registre de synchronisation
+     * @param fileSystem système de fichiers
+     */
+    public MoveDetector(Path source, Path destination, Registry registry,
+            FileSystem fileSystem) {
+        this.source = source;
+        this.destination = destination;
+        this.registry = registry;
+        this.fileSystem = fileSystem;
+        this.newFiles = new ArrayList<>();
+        this.missingFiles = new ArrayList<>();
+        this.missingDirectories = new LinkedHashMap<>();
+    }
+
+    // COMMANDES
+
+    /**
+     * Active ou désactive la déduplication des nouveaux fichiers copiés
+     * @param deduplication {@code true} pour lier les copies à un fichier de
+     * même contenu
+     * @see DeduplicatedCopyOperation copie dédupliquée
+     */
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    /**
+     * Met de côté un fichier présent uniquement dans la source
+     * @param sourceFile fichier source, conservé jusqu'à la résolution
+     */
+    public void addNewFile(FileLeaf sourceFile) {
+        newFiles.add(sourceFile);
+    }
+
+    /**
+     * Met de côté un fichier présent uniquement dans la destination
+     * @param destinationFile fichier de destination, conservé jusqu'à la
+     * résolution
+     */
+    public void addMissingFile(FileLeaf destinationFile) {
+        missingFiles.add(destinationFile);
+    }
+
+    /**
+     * Met de côté un répertoire présent uniquement dans la destination, après
+     * son parent
+     * @param destinationDirectory chemin du répertoire de destination
+     */
+    public void addMissingDirectory(Path destinationDirectory) {
+        missingDirectories.put(destinationDirectory, new int[2]);
+    }
+
+    /**
+     * Apparie les fichiers mis de côté et planifie leur déplacement, leur
+     * lien ou leur copie, ainsi que la création dans la source ou la
+     * suppression des répertoires absents de la source. Les fichiers mis de
+     * côté sont ensuite oubliés.
+     * @param plan plan de synchronisation à compléter
+     */
+    public void resolve(SyncPlan.Builder plan) {
+        Map<Key, Deque<FileLeaf>> candidates = new HashMap<>();
+        for (FileLeaf missing : missingFiles) {
+            if (registry.getLastSyncDate(relativeOf(destination, missing)) != null) {
+                candidates.computeIfAbsent(keyOf(missing),
+                        key -> new ArrayDeque<>()).add(missing);
+            }
+        }
+        Set<FileLeaf> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<FileLeaf, String> unmatched = new LinkedHashMap<>();
+        for (FileLeaf newFile : newFiles) {
+            Deque<FileLeaf> matches = candidates.get(keyOf(newFile));
+            // l'empreinte n'est calculée qu'en présence d'un candidat à
+            // confirmer
+            String hash = matches != null && !matches.isEmpty()
+                    ? fileSystem.getContentHash(newFile.getPath())
+                    : null;
+            FileLeaf previous = take(matches, hash);
+            if (previous == null) {
+                unmatched.put(newFile, hash);
+                continue;
+            }
+            String relative = relativeOf(source, newFile);
+            plan.add(new MoveOperation(fileSystem, registry, newFile.getPath(),
+                    previous.getPath(), destination.resolve(relative),
+                    relativeOf(destination, previous), relative, newFile.getSize(),
+                    newFile.getLastModified(), hash));
+            moved.add(previous);
+        }
+        planLinksOrCopies(plan, unmatched);
+        for (FileLeaf missing : missingFiles) {
+            if (!moved.contains(missing)) {
+                String relative = relativeOf(destination, missing);
+                plan.add(new CopyOperation(fileSystem, registry, missing.getPath(),
+                        source.resolve(relative), missing.getSize(), relative,
+                        missing.getLastModified()));
+            }
+            for (Path parent = missing.getPath().getParent();
+                    missingDirectories.containsKey(parent); parent = parent.getParent()) {
+                int[] counts = missingDirectories.get(parent);
+                counts[0]++;
+                if (moved.contains(missing)) {
+                    counts[1]++;
+                }
+            }
+        }
+        planDirectories(plan);
+        newFiles.clear();
+        missingFiles.clear();
+        missingDirectories.clear();
+    }
+
+    // OUTILS
+
+    /**
+     * Planifie, pour chaque nouveau fichier non apparié, un lien vers un
+     * fichier identique présent des deux côtés s'il est assez volumineux,
+     * sinon sa copie
+     * @param plan plan de synchronisation
+     * @param unmatched nouveaux fichiers non appariés, avec leur empreinte
+     * si elle a été calculée
+     */
+    private void planLinksOrCopies(SyncPlan.Builder plan, Map<FileLeaf, String> unmatched) {
+        for (Map.Entry<FileLeaf, String> entry : unmatched.entrySet()) {
+            FileLeaf newFile = entry.getKey();
+            String hash = entry.getValue();
+            String relative = relativeOf(source, newFile);
+            Path existing = newFile.getSize() >= LINK_THRESHOLD
+                    ? findIdentical(newFile, hash, registry.getPathsByContentKey(
+                            newFile.getSize(), newFile.getLastModified().getTime()))
+                    : null;
+            if (existing != null) {
+                plan.add(new LinkOperation(fileSystem, registry, newFile.getPath(),
+                        existing, destination.resolve(relative), relative,
+                        newFile.getSize(), newFile.getLastModified(), hash));
+            } else if (deduplication) {
+                plan.add(new DeduplicatedCopyOperation(fileSystem, registry,
+                        newFile.getPath(), destination.resolve(relative), destination,
+                        newFile.getSize(), relative, newFile.getLastModified(), hash));
+            } else {
+                plan.add(new CopyOperation(fileSystem, registry, newFile.getPath(),
+                        destination.resolve(relative), newFile.getSize(), relative,
+                        newFile.getLastModified(), hash));
+            }
+        }
+    }
+
+    /**
+     * Recherche parmi des fichiers du registre un fichier de destination
+     * identique à un nouveau fichier et inchangé des deux côtés, qu'aucune
+     * copie du plan ne peut donc modifier. L'empreinte du contenu est
+     * toujours comparée
+     * @param newFile nouveau fichier source
+     * @param hash empreinte du nouveau fichier, {@code null} si elle n'a pas
+     * été calculée
+     * @param relatives chemins relatifs dont l'empreinte enregistrée
+     * correspond à la taille et à la date du fichier
+     * @return chemin du fichier de destination, {@code null} si aucun
+     */
+    private Path findIdentical(FileLeaf newFile, String hash, List<String> relatives) {
+        long modified = newFile.getLastModified().getTime();
+        for (String relative : relatives) {
+            Path candidate = destination.resolve(relative);
+            if (!sameFile(fileSystem.getAttributes(candidate), newFile)
+                    || !sameFile(fileSystem.getAttributes(source.resolve(relative)), newFile)) {
+                continue;
+            }
+            if (hash == null) {
+                hash = fileSystem.getContentHash(newFile.getPath());
+            }
+            if (hash != null && hash.equals(destinationHash(relative,
+                    candidate, newFile.getSize(), modified))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retire d'une liste de fichiers candidats le premier dont le contenu
+     * correspond à l'empreinte donnée. L'empreinte d'un candidat inconnue du
+     * registre est calculée : un candidat n'est jamais apparié sur sa seule
+     * taille et sa date
+     * @param candidates fichiers de destination de même taille et même date,
+     * {@code null} si aucun
+     * @param hash empreinte du nouveau fichier, {@code null} si elle n'a pas
+     * été calculée
+     * @return fichier apparié, {@code null} si aucun
+     */
+    private FileLeaf take(Deque<FileLeaf> candidates, String hash) {
+        if (candidates == null) {
+            return null;
+        }
+        Iterator<FileLeaf> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            FileLeaf candidate = iterator.next();
+            String candidateHash = destinationHash(relativeOf(destination, candidate),
+                    candidate.getPath(), candidate.getSize(),
+                    candidate.getLastModified().getTime());
+            if (hash != null && hash.equals(candidateHash)) {
+                iterator.remove();
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Planifie la création dans la source des répertoires absents de la
+     * source, sauf ceux que les déplacements ont vidés, qui sont supprimés
+     * de la destination, les plus profonds d'abord
+     * @param plan plan de synchronisation
+     */
+    private void planDirectories(SyncPlan.Builder plan) {
+        List<Path> vacated = new ArrayList<>();
+        for (Map.Entry<Path, int[]> entry : missingDirectories.entrySet()) {
+            int[] counts = entry.getValue();
+            if (counts[0] > 0 && counts[0] == counts[1]) {
+                vacated.add(entry.getKey());
+            } else {
+                plan.add(new CreateDirectoryOperation(fileSystem,
+                        source.resolve(destination.relativize(entry.getKey()))));
+            }
+        }
+        Collections.reverse(vacated);
+        for (Path directory : vacated) {
+            plan.add(new RemoveDirectoryOperation(fileSystem, registry, directory,
+                    destination.relativize(directory).toString()));
+        }
+    }
+
+    /**
+     * Retourne l'empreinte d'un fichier de destination, celle du registre si
+     * elle correspond à sa taille et à sa date
+     */
+    private String destinationHash(String relative, Path path, long size, long modified) {
+        ContentHash recorded = registry.getContentHash(relative);
+        if (recorded != null && recorded.matchesDestination(size, modified)) {
+            return recorded.getHash();
+        }
+        return fileSystem.getContentHash(path);
+    }
+
+    private static boolean sameFile(BasicFileAttributes attributes, FileLeaf file) {
+        return attributes != null && attributes.isRegularFile()
+                && attributes.size() == file.getSize()
+                && attributes.lastModifiedTime().toMillis()
+                        == file.getLastModified().getTime();
+    }
+
+    private static String relativeOf(Path root, FileLeaf file) {
+        return root.relativize(file.getPath()).toString();
+    }
+
+    private static Key keyOf(FileLeaf file) {
+        return new Key(file.getSize(), file.getLastModified().getTime());
+    }
+
+    /**
+     * Clé d'appariement d'un fichier : taille et date de modification
+     */
+    private record Key(long size, long modified) {
+    }
+}
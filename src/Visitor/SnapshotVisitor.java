@@ -0,0 +1,106 @@
+package Visitor;
+
+import Adapter.FileSystem;
+import Command.CopyOperation;
+import Command.CreateDirectoryOperation;
+import Command.LinkOperation;
+import Command.SyncPlan;
+import Composite.DirectoryComposite;
+import Composite.FileComponent;
+import Composite.FileLeaf;
+import Singleton.Registry;
+import Strategy.WriteCommitter;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * Visiteur chargé de planifier une sauvegarde instantanée de la source dans
+ * un nouveau répertoire daté, à la manière de {@code rsync --link-dest}.
+ * Chaque fichier source dont la date de modification est celle enregistrée
+ * dans le registre lors de la sauvegarde précédente est inchangé : il est
+ * lié physiquement au fichier de la sauvegarde précédente. Les autres
+ * fichiers sont copiés. Une sauvegarde ne coûte ainsi que les octets
+ * modifiés et une arborescence de liens.
+ * Contrairement à la synchronisation, la sauvegarde ne va que de la source
+ * vers la destination.
+ *
+ * @see LinkOperation lien vers la sauvegarde précédente
+ * @see SyncPlan plan de synchronisation
+ */
+public class SnapshotVisitor implements FileVisitor {
+    // ATTRIBUTS
+
+    private final Path source;
+    private final Path snapshot;
+    private final Path previous;
+    private final Registry registry;
+    private final FileSystem fileSystem;
+    private final SyncPlan.Builder plan;
+
+    // CONSTRUCTEUR
+
+    /**
+     * Constructeur
+     * @param source chemin du répertoire source
+     * @param snapshot chemin du répertoire de la nouvelle sauvegarde
+     * @param previous chemin de la sauvegarde précédente, {@code null} s'il
+     * n'y en a pas
+     * @param registry registre des dates de la sauvegarde précédente
+     * @param fileSystem système de fichiers
+     */
+    public SnapshotVisitor(Path source, Path snapshot, Path previous,
+            Registry registry, FileSystem fileSystem) {
+        this.source = source;
+        this.snapshot = snapshot;
+        this.previous = previous;
+        this.registry = registry;
+        this.fileSystem = fileSystem;
+        this.plan = new SyncPlan.Builder();
+    }
+
+    // REQUÊTE
+
+    /**
+     * Retourne le plan de la sauvegarde
+     * @return plan de synchronisation
+     */
+    public SyncPlan takePlan() {
+        return plan.build();
+    }
+
+    // COMMANDES
+
+    @Override
+    public void visitFile(FileLeaf fileLeaf) {
+        Path path = fileLeaf.getPath();
+        if (WriteCommitter.isTemporary(path)) {
+            return;
+        }
+        Path relative = path.equals(source)
+                ? path.getFileName()
+                : source.relativize(path);
+        String relativeName = relative.toString();
+        Date lastModified = fileLeaf.getLastModified();
+        Date recorded = registry.getLastSyncDate(relativeName);
+        if (previous != null && recorded != null
+                && recorded.getTime() == lastModified.getTime()) {
+            plan.add(new LinkOperation(fileSystem, registry, path,
+                    previous.resolve(relative), snapshot.resolve(relative),
+                    relativeName, fileLeaf.getSize(), lastModified, null));
+        } else {
+            plan.add(new CopyOperation(fileSystem, registry, path,
+                    snapshot.resolve(relative), fileLeaf.getSize(), relativeName,
+                    lastModified));
+        }
+    }
+
+    @Override
+    public void visitDirectory(DirectoryComposite directoryComposite) {
+        plan.add(new CreateDirectoryOperation(fileSystem,
+                snapshot.resolve(source.relativize(directoryComposite.getPath()))));
+        for (FileComponent child : directoryComposite.getChildren()) {
+            child.accept(this);
+        }
+    }
+}
@@ -1,24 +1,53 @@
 package Visitor;
 
 import Adapter.FileSystem;
+import Command.ConflictOperation;
+import Command.CopyOperation;
+import Command.CreateDirectoryOperation;
+import Command.DeduplicatedCopyOperation;
+import Command.DirectoryStateOperation;
+import Command.RecordContentOperation;
+import Command.SyncExecutor;
+import Command.SyncPlan;
+import Composite.DestinationIndex;
 import Composite.DirectoryComposite;
 import Composite.FileComponent;
 import Composite.FileLeaf;
+import FactoryMethod.FileComponentCreator;
+import FactoryMethod.FileCreator;
+import Singleton.ContentHash;
 import Singleton.Registry;
+import Strategy.WriteCommitter;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 /**
- * Visiteur chargé d'appliquer la logique de synchronisation entre le répertoire
+ * Visiteur chargé de planifier la synchronisation entre le répertoire
  * source et le répertoire de destination
  * Implémente le patron Visitor pour appliquer cette logique lors du parcours
  * de l'arborescence des fichiers. Elle vérifie si les fichiers ont été
- * modifiés depuis la dernière synchronisation et les synchronise en conséquence
- *      
+ * modifiés depuis la dernière synchronisation et planifie les opérations de
+ * synchronisation en conséquence, sans rien modifier : le plan obtenu est
+ * ensuite exécuté par un {@link SyncExecutor}.
+ * L'état de la destination est lu dans un {@link DestinationIndex} : chaque
+ * répertoire de destination est consulté une fois par visite de son
+ * équivalent source, et non interrogé pour chacun des fichiers. Les deux
+ * listes d'enfants sont comparées en une passe par {@link DirectoryDiff}.
+ * Avec la détection des déplacements, les fichiers présents d'un seul côté
+ * sont confiés à un {@link MoveDetector} qui les apparie à la fin du
+ * parcours.
+ * Le plan peut être exécuté par parties au fil du parcours, pour qu'une
+ * grande arborescence parcourue à la demande ne soit jamais planifiée en
+ * entier avant la première copie.
+ *
  * @see FileVisitor
- * @see FileComponent
+ * @see DirectoryDiff
+ * @see SyncPlan
  * @see Registry
  * @see FileSystem
  */
@@ -29,7 +58,28 @@ public class SyncVisitor implements FileVisitor {
     private Path destination;
     private Registry registry;
     private FileSystem fileSystem;
+    private DestinationIndex destinationIndex;
+    private DirectoryDiff directoryDiff;
+    private FileComponentCreator fileCreator;
     private Scanner scanner;
+    private SyncPlan.Builder plan;
+    private MoveDetector moveDetector;
+    private boolean deduplication;
+    private int partialPlanSize;
+    private Consumer<SyncPlan> partialPlanExecutor;
+
+    /**
+     * Répertoire de destination déjà apparié au prochain répertoire source
+     * visité, pour ne pas le rechercher à nouveau dans l'index
+     */
+    private DirectoryComposite matchedDestination;
+
+    /**
+     * Indique si un répertoire non élagué a été visité dans l'arborescence
+     * du répertoire élagué en cours de visite, dont l'empreinte doit alors
+     * être mise à jour
+     */
+    private boolean subtreeChanged;
 
     // CONSTRUCTEUR
 
@@ -37,179 +87,359 @@ public class SyncVisitor implements FileVisitor {
             Path source,
             Path destination,
             Registry registry,
-            FileSystem fileSystem) {
+            FileSystem fileSystem,
+            DestinationIndex destinationIndex) {
         this.source = source;
         this.destination = destination;
         this.registry = registry;
         this.fileSystem = fileSystem;
+        this.destinationIndex = destinationIndex;
+        this.directoryDiff = new DirectoryDiff(source, registry, fileSystem);
+        this.fileCreator = new FileCreator();
+        this.plan = new SyncPlan.Builder();
         scanner = new Scanner(System.in);
     }
 
-    // COMMANDES
+    // REQUÊTE
 
-    @Override
-    public void visitFile(FileLeaf fileLeaf) {
-        Path pathRelatif = source.relativize(fileLeaf.getPath());
-        Path pathDestination = destination.resolve(pathRelatif);
-        Date lastSync = registry.getLastSyncDate(pathRelatif.toString());
+    /**
+     * Retourne le plan des opérations décidées depuis le précédent appel, et
+     * commence un nouveau plan vide
+     * @return plan de synchronisation
+     */
+    public SyncPlan takePlan() {
+        if (moveDetector != null) {
+            moveDetector.resolve(plan);
+        }
+        return plan.build();
+    }
 
-        Date sourceLastModified = fileLeaf.getLastModified();
-        Date destLastModified = fileSystem.exists(pathDestination)
-                ? fileSystem.getFileLastModified(pathDestination)
-                : null;
+    // COMMANDES
 
-        if (sourceLastModified == null) {
-            System.err.println("last modified not found:" + fileLeaf.getPath());
-            return;
+    /**
+     * Active ou désactive la comparaison du contenu des fichiers dont la date
+     * a changé, pour ne copier que ceux dont le contenu diffère
+     * @param checksum {@code true} pour comparer les empreintes
+     * @see DirectoryDiff#setChecksum(boolean) mode empreinte
+     */
+    public void setChecksum(boolean checksum) {
+        directoryDiff.setChecksum(checksum);
+    }
+
+    /**
+     * Active ou désactive la détection des fichiers déplacés dans la source,
+     * déplacés dans la destination au lieu d'y être recopiés
+     * @param moveDetection {@code true} pour détecter les déplacements
+     * @see MoveDetector détection des déplacements
+     */
+    public void setMoveDetection(boolean moveDetection) {
+        moveDetector = null;
+        if (moveDetection) {
+            moveDetector = new MoveDetector(source, destination, registry, fileSystem);
+            moveDetector.setDeduplication(deduplication);
         }
+    }
 
-        boolean sourceModified = (lastSync == null) || sourceLastModified.after(lastSync);
-        boolean destModified = (destLastModified != null) && (lastSync != null) && destLastModified.after(lastSync);
+    /**
+     * Fait exécuter le plan en cours dès qu'il atteint un nombre
+     * d'opérations donné, à la fin de la visite d'un répertoire : toutes les
+     * opérations de son arborescence sont alors planifiées, et l'état de ses
+     * ancêtres n'est enregistré que par un plan suivant, après leurs copies.
+     * Sans effet avec la détection des déplacements, qui n'apparie les
+     * fichiers qu'à la fin du parcours.
+     * @param operations nombre d'opérations déclenchant l'exécution
+     * @param executor exécution d'un plan partiel
+     */
+    public void executeEvery(int operations, Consumer<SyncPlan> executor) {
+        this.partialPlanSize = operations;
+        this.partialPlanExecutor = executor;
+    }
 
-        if (destLastModified != null) {
-            if (sourceModified && destModified) {
-                // Conflit : les deux fichiers ont été modifiés
-                handleConflict(fileLeaf.getPath(), pathDestination, pathRelatif);
-            } else if (sourceModified) {
-                // Source modifiée : copie vers destination
-                System.out.println("copy of: " + fileLeaf.getPath() + " to " + pathDestination);
-                fileSystem.copyFile(fileLeaf.getPath(), pathDestination);
-                registry.updateDate(pathRelatif.toString(), sourceLastModified);
-            } else if (destModified) {
-                // Destination modifiée : copie vers source
-                System.out.println("copy of: " + pathDestination + " to " + fileLeaf.getPath());
-                fileSystem.copyFile(pathDestination, fileLeaf.getPath());
-                registry.updateDate(pathRelatif.toString(), destLastModified);
-            }
-        } else {
-            // Le fichier n'existe pas en destination : copie depuis la source
-            System.out.println("copy of: " + fileLeaf.getPath() + " to " + pathDestination);
-            fileSystem.copyFile(fileLeaf.getPath(), pathDestination);
-            registry.updateDate(pathRelatif.toString(), sourceLastModified);
+    /**
+     * Active ou désactive la déduplication des fichiers copiés vers la
+     * destination, liés à un fichier de même contenu s'il en existe un
+     * @param deduplication {@code true} pour dédupliquer les copies
+     * @see DeduplicatedCopyOperation copie dédupliquée
+     */
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+        if (moveDetector != null) {
+            moveDetector.setDeduplication(deduplication);
         }
     }
 
+    @Override
+    public void visitFile(FileLeaf fileLeaf) {
+        // fichier racine : il n'a pas de répertoire parent à comparer
+        Path pathDestination = destination.resolve(source.relativize(fileLeaf.getPath()));
+        BasicFileAttributes attributes = fileSystem.getAttributes(pathDestination);
+        FileComponent destinationEntry = attributes != null
+                ? fileCreator.factoryMethod(pathDestination, attributes)
+                : null;
+        synchronizeEntry(destinationEntry != null
+                        ? directoryDiff.classify(fileLeaf, destinationEntry)
+                        : DirectoryDiff.Change.SOURCE_ONLY,
+                fileLeaf, destinationEntry);
+    }
+
 
     @Override
     public void visitDirectory(DirectoryComposite directoryComposite) {
-        Path pathRelatif = source.relativize(directoryComposite.getPath());
+        Path sourcePath = directoryComposite.getPath();
+        Path pathRelatif = source.relativize(sourcePath);
         Path destination = this.destination.resolve(pathRelatif);
-
-        // le répertoire de destination doit exister avant toute chose
-        if (!fileSystem.exists(destination)) {
-            fileSystem.createDirectory(destination);
-            System.out.println("created directory" + destination);
+        if (directoryComposite.isPruned()) {
+            // contenu direct inchangé : seuls ses sous-répertoires sont
+            // examinés, une modification pouvant se trouver plus bas
+            matchedDestination = null;
+            boolean changedBefore = subtreeChanged;
+            subtreeChanged = false;
+            for (FileComponent child : directoryComposite.getChildren()) {
+                child.accept(this);
+            }
+            if (subtreeChanged) {
+                plan.add(new DirectoryStateOperation(fileSystem, registry,
+                        sourcePath, destination, pathRelatif.toString()));
+            }
+            subtreeChanged |= changedBefore;
+            executeIfFull();
+            return;
         }
 
-        for (FileComponent childDirectory : directoryComposite.getChildren()) {
-            childDirectory.accept(this);
+        // le répertoire de destination doit exister avant toute chose
+        DirectoryComposite destinationDirectory = matchedDestination != null
+                ? matchedDestination
+                : destinationIndex.getDirectory(pathRelatif);
+        matchedDestination = null;
+        List<FileComponent> destinationChildren = List.of();
+        if (destinationDirectory == null) {
+            plan.add(new CreateDirectoryOperation(fileSystem, destination));
+        } else {
+            destinationChildren = destinationDirectory.getChildren();
         }
 
-        if (fileSystem.exists(destination)) {
-            for (Path destinationChild : fileSystem.listFiles(destination)) {
-                Path destinationRelative = destination.relativize(destinationChild);
-                Path src = directoryComposite.getPath().resolve(destinationRelative.toString());
-                if (!fileSystem.exists(src)) {
-                    if (fileSystem.isDirectory(destinationChild)) {
-                        System.out.println("directory created: " + src);
-                        mustSynchronizeDestinationToSource(destinationChild, src);
-                    } else {
-                        System.out.println("copy from:" + destinationChild + " to " + src);
-                        fileSystem.copyFile(destinationChild, src);
-                        Path p = source.relativize(destinationChild);
-                        registry.updateDate(p.toString(), fileSystem.getFileLastModified(destinationChild));
-                    }
-                }
-            }
-        }
+        int children = directoryDiff.compare(directoryComposite.getChildren(),
+                destinationChildren, this::synchronizeEntry);
+        // après synchronisation, source et destination ont les mêmes entrées
+        plan.add(new DirectoryStateOperation(fileSystem, registry, sourcePath,
+                destination, pathRelatif.toString(), children));
+        subtreeChanged = true;
+        executeIfFull();
     }
 
     // OUTILS
 
     /**
-     * Gére les conflits de modification entre deux fichiers, demande à
-     * l'utilisateur de choisir entre quels fichiers il faut garder : la source
-     * celui du dossier cible ou de l'ignorer
-     * @param source chemin du fichier source
-     * @param destination chemin du fichier cible
-     * @param relatif chemin relatif utilisé dans le registre
+     * Exécute le plan en cours s'il a atteint la taille des plans partiels
      */
-    private void handleConflict(Path source, Path destination, Path relatif) {
-        System.out.println("detected conflict: " + relatif);
-
-        Date sourceLastModified = fileSystem.getFileLastModified(source);
-        Date destinationLastModified = fileSystem.getFileLastModified(destination);
+    private void executeIfFull() {
+        if (partialPlanExecutor != null && moveDetector == null
+                && plan.size() >= partialPlanSize) {
+            partialPlanExecutor.accept(plan.build());
+        }
+    }
 
-        if (sourceLastModified == null || destinationLastModified == null) {
-            System.out.println("Unable to resolve conflict due to missing file dates.");
+    /**
+     * Planifie la synchronisation d'une entrée selon son classement : copie
+     * vers la destination ou vers la source, résolution d'un conflit, ou
+     * visite d'un sous-répertoire. Les opérations ne conservent que des
+     * chemins et des dates, les composants pouvant être réutilisés après
+     * l'appel.
+     * @param change classement de l'entrée
+     * @param sourceEntry entrée source, {@code null} si absente
+     * @param destinationEntry entrée destination, {@code null} si absente
+     */
+    private void synchronizeEntry(DirectoryDiff.Change change,
+            FileComponent sourceEntry, FileComponent destinationEntry) {
+        FileComponent entry = sourceEntry != null ? sourceEntry : destinationEntry;
+        if (WriteCommitter.isTemporary(entry.getPath())) {
+            // copie par segments en cours ou interrompue, reprise par la
+            // copie de son fichier
             return;
         }
+        switch (change) {
+            case SOURCE_ONLY:
+                if (sourceEntry instanceof DirectoryComposite) {
+                    sourceEntry.accept(this);
+                } else if (moveDetector != null) {
+                    // nouveau fichier ou fichier déplacé : décidé à la fin du
+                    // parcours
+                    moveDetector.addNewFile(snapshotOf(sourceEntry));
+                } else {
+                    // Le fichier n'existe pas en destination : copie depuis la source
+                    copyToDestination(sourceEntry, null);
+                }
+                break;
+            case DESTINATION_ONLY:
+                Path src = source.resolve(destination.relativize(destinationEntry.getPath()));
+                if (destinationEntry instanceof DirectoryComposite destinationDirectory) {
+                    createSourceDirectory(destinationDirectory, src);
+                    mustSynchronizeDestinationToSource(destinationDirectory, src);
+                } else if (moveDetector != null) {
+                    moveDetector.addMissingFile(snapshotOf(destinationEntry));
+                } else {
+                    copyToSource(destinationEntry, src, null);
+                }
+                break;
+            case SOURCE_CHANGED:
+                // Source modifiée : copie vers destination
+                copyToDestination(sourceEntry, directoryDiff.getSourceHash());
+                break;
+            case DESTINATION_CHANGED:
+                // Destination modifiée : copie vers source
+                copyToSource(destinationEntry, sourceEntry.getPath(),
+                        directoryDiff.getDestinationHash());
+                break;
+            case BOTH_CHANGED:
+                // Conflit : les deux fichiers ont été modifiés
+                plan.add(new ConflictOperation(fileSystem, registry, scanner,
+                        sourceEntry.getPath(), destinationEntry.getPath(),
+                        Math.max(sizeOf(sourceEntry), sizeOf(destinationEntry)),
+                        source.relativize(sourceEntry.getPath()).toString()));
+                break;
+            case UNCHANGED:
+                if (sourceEntry instanceof DirectoryComposite) {
+                    matchedDestination = (DirectoryComposite) destinationEntry;
+                    sourceEntry.accept(this);
+                } else if (directoryDiff.getSourceHash() != null) {
+                    // dates modifiées mais contenus identiques
+                    recordContent(sourceEntry, destinationEntry,
+                            directoryDiff.getSourceHash());
+                }
+                break;
+            case TYPE_MISMATCH:
+                System.err.println("file and directory with the same name, ignored: "
+                        + sourceEntry.getPath() + " / " + destinationEntry.getPath());
+                break;
+        }
+    }
 
-        System.out.println(
-                "source: " + source
-                        + " last modified:"
-                        + fileSystem.getFileLastModified(source));
-        System.out.println(
-                "destination: " + destination
-                        + " last modified:"
-                        + fileSystem.getFileLastModified(destination));
-
-        int choice = -1;
-        while (choice < 1 || choice > 3) {
-            System.out.println("possible actions: ");
-            System.out.println("1 - use the source file");
-            System.out.println("2 - use the destination file");
-            System.out.println("3 - ignore");
-            System.out.print("choice (1-3): ");
-            try {
-                choice = Integer.parseInt(scanner.nextLine().trim());
-            } catch (NumberFormatException e) {
-                System.out.println("the choice must be between 1 and 3");
-            }
+    /**
+     * Planifie la copie d'un fichier source vers son équivalent en
+     * destination et la mise à jour de sa date de synchronisation
+     * @param sourceEntry fichier source
+     * @param hash empreinte du fichier source, {@code null} si inconnue
+     */
+    private void copyToDestination(FileComponent sourceEntry, String hash) {
+        Path pathRelatif = source.relativize(sourceEntry.getPath());
+        if (deduplication) {
+            plan.add(new DeduplicatedCopyOperation(fileSystem, registry,
+                    sourceEntry.getPath(), destination.resolve(pathRelatif),
+                    destination, sizeOf(sourceEntry), pathRelatif.toString(),
+                    sourceEntry.getLastModified(), hash));
+            return;
         }
-        Date now = new Date();
-        switch (choice) {
-            case 1:
-                System.out.println("copy from: " + source + " to " + destination);
-                fileSystem.copyFile(source, destination);
-                registry.updateDate(relatif.toString(), now);
-                break;
-                case 2:
-                    System.out.println("copy from: " + destination + " to " + source);
-                    fileSystem.copyFile(destination, source);
-                    registry.updateDate(relatif.toString(), now);
-                    break;
-                    case 3:
-                        System.out.println("ignore");
-                        break;
+        plan.add(new CopyOperation(fileSystem, registry, sourceEntry.getPath(),
+                destination.resolve(pathRelatif), sizeOf(sourceEntry),
+                pathRelatif.toString(), sourceEntry.getLastModified(), hash));
+    }
+
+    /**
+     * Planifie la copie d'un fichier de destination vers la source et la
+     * mise à jour de sa date de synchronisation
+     * @param destinationEntry fichier de destination
+     * @param sourcePath chemin de la copie dans la source
+     * @param hash empreinte du fichier de destination, {@code null} si
+     * inconnue
+     */
+    private void copyToSource(FileComponent destinationEntry, Path sourcePath,
+            String hash) {
+        plan.add(new CopyOperation(fileSystem, registry,
+                destinationEntry.getPath(), sourcePath, sizeOf(destinationEntry),
+                destination.relativize(destinationEntry.getPath()).toString(),
+                destinationEntry.getLastModified(), hash));
+    }
+
+    /**
+     * Planifie l'enregistrement d'un fichier de même contenu des deux côtés
+     * malgré des dates modifiées, s'il n'est pas déjà enregistré tel quel
+     * @param sourceEntry fichier source
+     * @param destinationEntry fichier de destination
+     * @param hash empreinte commune des deux fichiers
+     */
+    private void recordContent(FileComponent sourceEntry,
+            FileComponent destinationEntry, String hash) {
+        String relative = source.relativize(sourceEntry.getPath()).toString();
+        long size = sizeOf(sourceEntry);
+        long sourceModified = sourceEntry.getLastModified().getTime();
+        long destinationModified = destinationEntry.getLastModified().getTime();
+        ContentHash recorded = registry.getContentHash(relative);
+        if (recorded != null && recorded.getHash().equals(hash)
+                && recorded.matchesSource(size, sourceModified)
+                && recorded.matchesDestination(size, destinationModified)) {
+            return;
         }
+        plan.add(new RecordContentOperation(registry, sourceEntry.getPath(),
+                relative, new Date(Math.max(sourceModified, destinationModified)),
+                new ContentHash(size, sourceModified, destinationModified, hash)));
     }
 
     /**
-     * Méthode récursive pour synchroniser les fichiers présents uniquement
-     * dans le répertoire de destination vers celui source
-     * @param destinationPath répertoire cible
+     * Méthode récursive pour planifier la synchronisation des fichiers
+     * présents uniquement dans le répertoire de destination vers celui source
+     * @param destinationDirectory répertoire cible
      * @param sourcePath répertoire source
      */
-    private void mustSynchronizeDestinationToSource(Path destinationPath, Path sourcePath) {
-        for (Path targetChild : fileSystem.listFiles(destinationPath)) {
-            Path targetRelative = destinationPath.relativize(targetChild);
-            Path sourceEquivalent = sourcePath.resolve(targetRelative);
+    private void mustSynchronizeDestinationToSource(
+            DirectoryComposite destinationDirectory, Path sourcePath) {
+        // le répertoire source sera créé : aucun de ses enfants n'existe
+        // encore
+        for (FileComponent targetChild : destinationDirectory.getChildren()) {
+            Path sourceEquivalent = sourcePath.resolve(nameOf(targetChild));
 
-            if (fileSystem.isDirectory(targetChild)) {
-                if (!fileSystem.exists(sourceEquivalent)) {
-                    System.out.println("directory created: " + sourceEquivalent);
-                    fileSystem.createDirectory(sourceEquivalent);
-                }
-                mustSynchronizeDestinationToSource(targetChild, sourceEquivalent);
+            if (targetChild instanceof DirectoryComposite targetDirectory) {
+                createSourceDirectory(targetDirectory, sourceEquivalent);
+                mustSynchronizeDestinationToSource(targetDirectory, sourceEquivalent);
+            } else if (moveDetector != null) {
+                moveDetector.addMissingFile(snapshotOf(targetChild));
             } else {
-                if (!fileSystem.exists(sourceEquivalent)) {
-                    System.out.println("copy from: " + targetChild + " to " + sourceEquivalent);
-                    fileSystem.copyFile(targetChild, sourceEquivalent);
-                    Path relPath = sourcePath.relativize(sourceEquivalent);
-                    registry.updateDate(relPath.toString(), fileSystem.getFileLastModified(targetChild));
-                }
+                copyToSource(targetChild, sourceEquivalent, null);
             }
         }
     }
+
+    /**
+     * Planifie la création dans la source d'un répertoire présent uniquement
+     * dans la destination, ou la confie au détecteur de déplacements : le
+     * répertoire peut avoir été vidé par le déplacement de ses fichiers
+     * @param destinationDirectory répertoire de destination
+     * @param sourcePath chemin du répertoire à créer dans la source
+     */
+    private void createSourceDirectory(DirectoryComposite destinationDirectory,
+            Path sourcePath) {
+        if (moveDetector != null) {
+            moveDetector.addMissingDirectory(destinationDirectory.getPath());
+        } else {
+            plan.add(new CreateDirectoryOperation(fileSystem, sourcePath));
+        }
+    }
+
+    /**
+     * Retourne une copie d'un fichier lu lors du parcours, qui peut être
+     * conservée après sa visite
+     * @param component fichier
+     * @return copie du fichier
+     */
+    private static FileLeaf snapshotOf(FileComponent component) {
+        return new FileLeaf(component.getPath(), component.getLastModified(),
+                sizeOf(component));
+    }
+
+    /**
+     * Retourne le nom d'un fichier ou répertoire dans son répertoire parent
+     * @param component fichier ou répertoire
+     * @return nom du composant
+     */
+    private static String nameOf(FileComponent component) {
+        return component.getPath().getFileName().toString();
+    }
+
+    /**
+     * Retourne la taille d'un fichier lue lors du parcours
+     * @param component fichier
+     * @return taille en octets, {@code -1} si inconnue
+     */
+    private static long sizeOf(FileComponent component) {
+        return component instanceof FileLeaf fileLeaf ? fileLeaf.getSize() : -1;
+    }
 }